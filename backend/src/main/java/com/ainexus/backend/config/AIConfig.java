@@ -6,6 +6,11 @@ import lombok.Setter;
 import lombok.extern.log4j.Log4j2;
 import org.springframework.boot.context.properties.ConfigurationProperties;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.util.unit.DataSize;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
 import java.util.HashMap;
 
@@ -16,10 +21,125 @@ import java.util.HashMap;
 @Configuration
 @ConfigurationProperties(prefix = "openrouter")
 public class AIConfig {
+    private static final String DEFAULT = "default";
+
     private String endpoint;
 
+    // Upstream provider per model ("openrouter" or "stub"); models not listed use provider
+    private String provider = "openrouter";
+    private final Map<String, String> providers = new HashMap<>();
+    // Simulated behaviour of the stub provider per model, with a "default" entry
+    private final Map<String, Stub> stub = new HashMap<>();
+
     private final Map<String, String> models = new HashMap<>();
     private final Map<String, String> apiKeys = new HashMap<>();
+    private final Map<String, Integer> contextBudgets = new HashMap<>();
+    private final Context context = new Context();
+
+    // Shared upstream HTTP client settings, plus per-model timeout overrides
+    private final Http http = new Http();
+    private final Map<String, Timeouts> timeouts = new HashMap<>();
+
+    private final HistoryCache historyCache = new HistoryCache();
+    private final ResponseCache responseCache = new ResponseCache();
+
+    private final Limiter limiter = new Limiter();
+
+    // Circuit breaker / adaptive timeout / hedging settings per model, with a "default" entry
+    private final Map<String, Resilience> resilience = new HashMap<>();
+
+    // Constraints for the virtual "auto" model
+    private final Router router = new Router();
+
+    // Upper bound for a multi-model compare; slower models are reported as timed out
+    private Duration compareDeadline = Duration.ofSeconds(45);
+
+    @Getter
+    @Setter
+    public static class Http {
+        private Duration connectTimeout = Duration.ofSeconds(10);
+        private Duration readTimeout = Duration.ofSeconds(60);
+        private String executor = "virtual"; // "virtual" or "platform"
+        private int platformThreads = 16;
+    }
+
+    @Getter
+    @Setter
+    public static class Context {
+        private int defaultBudget = 8000; // tokens
+        private String summaryModel = "gemini";
+    }
+
+    @Getter
+    @Setter
+    public static class HistoryCache {
+        private boolean enabled = true;
+        private DataSize maxSize = DataSize.ofMegabytes(64);
+    }
+
+    @Getter
+    @Setter
+    public static class ResponseCache {
+        private boolean enabled = false;
+        private int maxEntries = 10_000;
+        private DataSize maxSize = DataSize.ofMegabytes(128);
+        private Duration ttl = Duration.ofHours(1);
+        private boolean offHeap = false;
+    }
+
+    @Getter
+    @Setter
+    public static class Limiter {
+        private boolean enabled = true;
+        private int initialLimit = 10;
+        private int minLimit = 2;
+        private int maxLimit = 100;
+        private int maxQueue = 20;
+        private Duration maxWait = Duration.ofSeconds(5);
+        private double latencyTolerance = 2.0; // short-term vs long-term latency ratio that counts as congestion
+        private double backoffRatio = 0.9;
+    }
+
+    @Getter
+    @Setter
+    public static class Resilience {
+        private int failureThreshold = 5; // consecutive failures before the circuit opens
+        private Duration openDuration = Duration.ofSeconds(30);
+        private boolean adaptiveTimeout = true;
+        private double timeoutMultiplier = 2.0; // applied to the observed p99
+        private Duration minTimeout = Duration.ofSeconds(5);
+        private int minSamples = 20;
+        private boolean hedge = false; // duplicate the request once it runs past p95
+        private Duration statsHalfLife = Duration.ofMinutes(5); // decay of the latency/error averages used for routing
+    }
+
+    @Getter
+    @Setter
+    public static class Router {
+        private List<String> candidates = new ArrayList<>(); // empty = every configured model
+        private boolean freeOnly = false; // only models whose identifier ends in ":free"
+        private Duration maxP95; // unset = no latency ceiling
+        private double errorPenalty = 4.0; // score = latency * (1 + errorPenalty * errorRate)
+    }
+
+    @Getter
+    @Setter
+    public static class Stub {
+        private Duration latencyMedian = Duration.ofMillis(800); // whole response, non-streaming
+        private double latencySigma = 0.5; // log-normal spread; 0.5 puts p99 at ~3.2x the median
+        private Duration firstTokenMedian = Duration.ofMillis(300); // streaming
+        private Duration chunkInterval = Duration.ofMillis(20);
+        private int responseTokens = 200; // mean; actual sizes vary uniformly by +/-50%
+        private double errorRate = 0.0;
+        private int errorStatus = 503;
+    }
+
+    @Getter
+    @Setter
+    public static class Timeouts {
+        private Duration connect;
+        private Duration read;
+    }
 
     public String getModelIdentifier(String modelName) {
         String id = models.get(modelName.toLowerCase());
@@ -31,13 +151,52 @@ public class AIConfig {
         return id;
     }
 
+    /** Null when no key is set; whether that matters depends on the provider, see UpstreamHttpClient#hasCredentials. */
     public String getApiKeyForModel(String modelName) {
         String key = apiKeys.get(modelName.toLowerCase());
-        if (key == null) {
-            log.warn("API key not found for model: {}", modelName);
-        } else {
-            log.debug("API key found for model: {}", modelName);
+        if (key == null || key.isBlank()) {
+            log.debug("API key not set for model: {}", modelName);
+            return null;
         }
+        log.debug("API key found for model: {}", modelName);
         return key;
     }
+
+    public int getContextBudget(String modelName) {
+        return contextBudgets.getOrDefault(modelName.toLowerCase(), context.getDefaultBudget());
+    }
+
+    /**
+     * Adds the "default" entries the per-model lookups fall back to, once binding is done, so the
+     * maps are only read afterwards and can be shared between request threads.
+     */
+    @PostConstruct
+    public void fillDefaults() {
+        resilience.putIfAbsent(DEFAULT, new Resilience());
+        stub.putIfAbsent(DEFAULT, new Stub());
+    }
+
+    public Resilience getResilience(String modelName) {
+        Resilience r = resilience.get(modelName.toLowerCase());
+        return r != null ? r : resilience.get(DEFAULT);
+    }
+
+    public String getProviderName(String modelName) {
+        return providers.getOrDefault(modelName.toLowerCase(), provider);
+    }
+
+    public Stub getStub(String modelName) {
+        Stub s = stub.get(modelName.toLowerCase());
+        return s != null ? s : stub.get(DEFAULT);
+    }
+
+    public Duration getConnectTimeout(String modelName) {
+        Timeouts t = timeouts.get(modelName.toLowerCase());
+        return t != null && t.getConnect() != null ? t.getConnect() : http.getConnectTimeout();
+    }
+
+    public Duration getReadTimeout(String modelName) {
+        Timeouts t = timeouts.get(modelName.toLowerCase());
+        return t != null && t.getRead() != null ? t.getRead() : http.getReadTimeout();
+    }
 }
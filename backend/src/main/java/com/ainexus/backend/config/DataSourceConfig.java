@@ -0,0 +1,63 @@
+package com.ainexus.backend.config;
+
+import com.ainexus.backend.persistence.ReadRouting;
+import com.ainexus.backend.persistence.ReplicaRoutingDataSource;
+import com.zaxxer.hikari.HikariDataSource;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnExpression;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.jdbc.DataSourceBuilder;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+
+import javax.sql.DataSource;
+
+/**
+ * One Hikari pool per route. The application's {@link DataSource} hands out connections lazily,
+ * so by the time one is needed it is known whether the transaction is read-only; read-only ones
+ * are taken from the replica pool, when {@code persistence.replica.url} is set, and everything
+ * else from the primary pool configured under {@code spring.datasource}.
+ */
+@Configuration
+public class DataSourceConfig {
+
+    @Bean
+    @ConfigurationProperties("spring.datasource.hikari")
+    public HikariDataSource primaryDataSource(DataSourceProperties properties) {
+        return properties.initializeDataSourceBuilder().type(HikariDataSource.class).build();
+    }
+
+    @Bean
+    @ConditionalOnExpression("!'${persistence.replica.url:}'.isEmpty()")
+    @ConfigurationProperties("persistence.replica.hikari")
+    public HikariDataSource replicaDataSource(PersistenceConfig persistenceConfig, DataSourceProperties properties) {
+        PersistenceConfig.Replica replica = persistenceConfig.getReplica();
+        HikariDataSource dataSource = DataSourceBuilder.create()
+                .type(HikariDataSource.class)
+                .driverClassName(properties.getDriverClassName())
+                .url(replica.getUrl())
+                .username(replica.getUsername())
+                .password(replica.getPassword())
+                .build();
+        dataSource.setReadOnly(true);
+        return dataSource;
+    }
+
+    @Bean
+    @Primary
+    public DataSource dataSource(@Qualifier("primaryDataSource") DataSource primary,
+                                 @Qualifier("replicaDataSource") ObjectProvider<DataSource> replica,
+                                 ReadRouting readRouting) {
+        LazyConnectionDataSourceProxy dataSource = new LazyConnectionDataSourceProxy();
+        dataSource.setTargetDataSource(primary);
+        DataSource replicaDataSource = replica.getIfAvailable();
+        if (replicaDataSource != null) {
+            dataSource.setReadOnlyDataSource(new ReplicaRoutingDataSource(primary, replicaDataSource, readRouting));
+        }
+        return dataSource;
+    }
+}
@@ -0,0 +1,79 @@
+package com.ainexus.backend.config;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.util.unit.DataSize;
+
+import java.time.Duration;
+
+@Getter
+@Setter
+@Configuration
+@ConfigurationProperties(prefix = "persistence")
+public class PersistenceConfig {
+
+    private final WriteBehind writeBehind = new WriteBehind();
+    private final Retention retention = new Retention();
+    private final Compression compression = new Compression();
+    private final Replica replica = new Replica();
+    private final UserCache userCache = new UserCache();
+
+    @Getter
+    @Setter
+    public static class WriteBehind {
+        private boolean enabled = false;
+        private String directory = "data/journal";
+        private int batchSize = 500; // messages per drain transaction
+        private int maxQueue = 10_000; // pending turns; beyond it writes go to the database synchronously
+        private int maxGroup = 256; // turns written with a single fsync
+        private DataSize segmentSize = DataSize.ofMegabytes(64);
+        private Duration retryBackoff = Duration.ofSeconds(1);
+        // Failed drains of a batch, other than the database being unreachable, before its turns
+        // are written one by one and the rejected ones moved to the dead-letter file
+        private int maxRetries = 5;
+        private Duration shutdownTimeout = Duration.ofSeconds(10);
+    }
+
+    @Getter
+    @Setter
+    public static class Retention {
+        private boolean enabled = false;
+        private Duration interval = Duration.ofHours(1);
+        // Idle time after which a conversation is archived, per user tier; unset = never
+        private Duration free = Duration.ofDays(30);
+        private Duration premium = Duration.ofDays(365);
+        private int batchSize = 100; // conversations per tier and run
+    }
+
+    @Getter
+    @Setter
+    public static class Compression {
+        private boolean enabled = true;
+        private DataSize threshold = DataSize.ofKilobytes(1); // smaller messages are stored as plain UTF-8
+        private int level = 1; // deflate level, 1 (fastest) to 9
+    }
+
+    @Getter
+    @Setter
+    public static class Replica {
+        // Read-only transactions go to this database when set; the pool is tuned under replica.hikari
+        private String url;
+        private String username;
+        private String password;
+        private Duration maxLag = Duration.ofSeconds(5); // beyond it reads go to the primary
+        private Duration lagCheckInterval = Duration.ofSeconds(5);
+        // A user's reads stay on the primary this long after they write; keep it above max-lag
+        private Duration readYourWrites = Duration.ofSeconds(10);
+    }
+
+    @Getter
+    @Setter
+    public static class UserCache {
+        private boolean enabled = true;
+        private int maxEntries = 10_000;
+        // Bounds how stale a snapshot can be after a change made by another instance
+        private Duration ttl = Duration.ofSeconds(60);
+    }
+}
@@ -0,0 +1,89 @@
+package com.ainexus.backend.config;
+
+import lombok.extern.log4j.Log4j2;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.core.io.Resource;
+import org.springframework.core.io.support.PathMatchingResourcePatternResolver;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.init.ScriptUtils;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.sql.DataSource;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Applies the versioned scripts in {@code classpath:db/migration} ({@code V<n>__<description>.sql},
+ * the Flyway naming) that are not yet recorded in {@code schema_migrations}, in version order and
+ * in a single transaction, before the application serves requests. The schema is owned by these
+ * scripts; Hibernate no longer alters it.
+ */
+@Log4j2
+@Component
+public class SchemaMigrations implements InitializingBean {
+
+    private static final String LOCATION = "classpath:db/migration/V*__*.sql";
+    private static final Pattern VERSIONED = Pattern.compile("V(\\d+)__(.+)\\.sql");
+    // Serialises instances that start at the same time against the same database
+    private static final long LOCK_KEY = 0x41494e6578L;
+
+    private final DataSource dataSource;
+
+    public SchemaMigrations(DataSource dataSource) {
+        this.dataSource = dataSource;
+    }
+
+    @Override
+    public void afterPropertiesSet() throws IOException {
+        Resource[] scripts = new PathMatchingResourcePatternResolver().getResources(LOCATION);
+        Arrays.sort(scripts, Comparator.comparingInt(SchemaMigrations::version));
+
+        JdbcTemplate jdbc = new JdbcTemplate(dataSource);
+        new TransactionTemplate(new DataSourceTransactionManager(dataSource)).executeWithoutResult(status -> {
+            jdbc.queryForList("select pg_advisory_xact_lock(?)", LOCK_KEY);
+            jdbc.execute("create table if not exists schema_migrations (" +
+                    "version integer primary key, " +
+                    "description varchar(200) not null, " +
+                    "installed_at timestamptz not null default now())");
+            Set<Integer> applied = new HashSet<>(jdbc.queryForList("select version from schema_migrations", Integer.class));
+
+            for (Resource script : scripts) {
+                int version = version(script);
+                if (applied.contains(version)) {
+                    continue;
+                }
+                log.info("Applying schema migration {}", script.getFilename());
+                jdbc.execute((ConnectionCallback<Void>) connection -> {
+                    ScriptUtils.executeSqlScript(connection, script);
+                    return null;
+                });
+                jdbc.update("insert into schema_migrations (version, description) values (?, ?)",
+                        version, description(script));
+            }
+        });
+    }
+
+    private static int version(Resource script) {
+        return Integer.parseInt(matcher(script).group(1));
+    }
+
+    private static String description(Resource script) {
+        return matcher(script).group(2).replace('_', ' ');
+    }
+
+    private static Matcher matcher(Resource script) {
+        Matcher matcher = VERSIONED.matcher(script.getFilename());
+        if (!matcher.matches()) {
+            throw new IllegalStateException("Not a versioned migration: " + script.getFilename());
+        }
+        return matcher;
+    }
+}
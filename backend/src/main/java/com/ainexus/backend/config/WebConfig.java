@@ -1,12 +1,25 @@
 package com.ainexus.backend.config;
 
+import com.ainexus.backend.persistence.ReadRoutingInterceptor;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.web.servlet.config.annotation.CorsRegistry;
+import org.springframework.web.servlet.config.annotation.InterceptorRegistry;
 import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
 
 @Configuration
 public class WebConfig implements WebMvcConfigurer {
 
+    private final ReadRoutingInterceptor readRoutingInterceptor;
+
+    public WebConfig(ReadRoutingInterceptor readRoutingInterceptor) {
+        this.readRoutingInterceptor = readRoutingInterceptor;
+    }
+
+    @Override
+    public void addInterceptors(InterceptorRegistry registry) {
+        registry.addInterceptor(readRoutingInterceptor).addPathPatterns("/api/**");
+    }
+
     @Override
     public void addCorsMappings(CorsRegistry registry) {
         registry.addMapping("/**")
@@ -3,9 +3,11 @@ package com.ainexus.backend.controller;
 import com.ainexus.backend.model.AnalyticsModels.*;
 import com.ainexus.backend.service.AnalyticsService;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.format.annotation.DateTimeFormat;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 import java.security.Principal;
+import java.time.LocalDate;
 
 @RestController
 @RequestMapping("/api/analytics")
@@ -15,12 +17,17 @@ public class AnalyticsController {
     private AnalyticsService analyticsService;
 
     @GetMapping("/personal")
-    public ResponseEntity<PersonalAnalytics> getPersonalAnalytics(Principal principal) {
-        return ResponseEntity.ok(analyticsService.getPersonalAnalytics(principal.getName()));
+    public ResponseEntity<PersonalAnalytics> getPersonalAnalytics(
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate from,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate to,
+            Principal principal) {
+        return ResponseEntity.ok(analyticsService.getPersonalAnalytics(principal.getName(), from, to));
     }
 
     @GetMapping("/leaderboard")
-    public ResponseEntity<GlobalLeaderboard> getGlobalLeaderboard() {
-        return ResponseEntity.ok(analyticsService.getGlobalLeaderboard());
+    public ResponseEntity<GlobalLeaderboard> getGlobalLeaderboard(
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate from,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate to) {
+        return ResponseEntity.ok(analyticsService.getGlobalLeaderboard(from, to));
     }
 }
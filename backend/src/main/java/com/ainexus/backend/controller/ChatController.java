@@ -1,15 +1,23 @@
 package com.ainexus.backend.controller;
 
+import com.ainexus.backend.model.CompareRequest;
+import com.ainexus.backend.model.CompareResponse;
 import com.ainexus.backend.model.Conversation;
+import com.ainexus.backend.model.ConversationSummaryPage;
 import com.ainexus.backend.model.CreateConversationRequest;
+import com.ainexus.backend.model.MessagePage;
 import com.ainexus.backend.model.SendMessageRequest;
 import com.ainexus.backend.model.SendMessageResponse;
 import com.ainexus.backend.service.AiChatService;
+import com.ainexus.backend.upstream.LoadShedException;
 import lombok.extern.log4j.Log4j2;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
-import java.util.List;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
 @RestController
 @RequestMapping("/api")
@@ -25,12 +33,42 @@ public class ChatController {
         try {
             SendMessageResponse response = aiChatService.sendMessage(request, principal.getName());
             return ResponseEntity.ok(response);
+        } catch (LoadShedException e) {
+            log.warn("Shedding sendMessage: {}", e.getMessage());
+            return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS)
+                    .header(HttpHeaders.RETRY_AFTER, String.valueOf(e.getRetryAfterSeconds())).build();
         } catch (Exception e) {
             log.error("Error in sendMessage", e);
             return ResponseEntity.badRequest().build();
         }
     }
 
+    @PostMapping(value = "/chat/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public ResponseEntity<SseEmitter> streamMessage(@RequestBody SendMessageRequest request, java.security.Principal principal) {
+        log.info("POST /chat/stream called by user: {}", principal.getName());
+        try {
+            return ResponseEntity.ok(aiChatService.streamMessage(request, principal.getName()));
+        } catch (LoadShedException e) {
+            log.warn("Shedding streamMessage: {}", e.getMessage());
+            return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS)
+                    .header(HttpHeaders.RETRY_AFTER, String.valueOf(e.getRetryAfterSeconds())).build();
+        } catch (Exception e) {
+            log.error("Error in streamMessage", e);
+            return ResponseEntity.badRequest().build();
+        }
+    }
+
+    @PostMapping("/chat/compare")
+    public ResponseEntity<CompareResponse> compare(@RequestBody CompareRequest request, java.security.Principal principal) {
+        log.info("POST /chat/compare called by user: {} for models {}", principal.getName(), request.getAiModels());
+        try {
+            return ResponseEntity.ok(aiChatService.compare(request, principal.getName()));
+        } catch (Exception e) {
+            log.error("Error in compare", e);
+            return ResponseEntity.badRequest().build();
+        }
+    }
+
     @GetMapping("/conversations/{conversationId}")
     public ResponseEntity<Conversation> getConversation(@PathVariable String conversationId) {
         try {
@@ -42,10 +80,30 @@ public class ChatController {
         }
     }
 
+    @GetMapping("/conversations/{conversationId}/messages")
+    public ResponseEntity<MessagePage> getMessages(@PathVariable String conversationId,
+                                                   @RequestParam(required = false) String before,
+                                                   @RequestParam(required = false) Integer limit,
+                                                   java.security.Principal principal) {
+        try {
+            MessagePage page = aiChatService.getMessages(conversationId, principal.getName(), before, limit);
+            return page != null ? ResponseEntity.ok(page) : ResponseEntity.notFound().build();
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().build();
+        } catch (Exception e) {
+            log.error("Error in getMessages", e);
+            return ResponseEntity.internalServerError().build();
+        }
+    }
+
     @GetMapping("/conversations")
-    public ResponseEntity<List<Conversation>> getUserConversations(java.security.Principal principal) {
+    public ResponseEntity<ConversationSummaryPage> getUserConversations(@RequestParam(required = false) String before,
+                                                                        @RequestParam(required = false) Integer limit,
+                                                                        java.security.Principal principal) {
         try {
-            return ResponseEntity.ok(aiChatService.getUserConversations(principal.getName()));
+            return ResponseEntity.ok(aiChatService.getConversationSummaries(principal.getName(), before, limit));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().build();
         } catch (Exception e) {
             log.error("Error in getUserConversations", e);
             return ResponseEntity.internalServerError().build();
@@ -1,7 +1,10 @@
 package com.ainexus.backend.controller;
 
 import com.ainexus.backend.model.PromptAnalysisResponse;
+import com.ainexus.backend.service.CreditLedger;
+import com.ainexus.backend.service.InsufficientCreditsException;
 import com.ainexus.backend.service.PromptAnalysisService;
+import com.ainexus.backend.service.UserCache;
 import lombok.extern.log4j.Log4j2;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.ResponseEntity;
@@ -15,11 +18,14 @@ import java.util.Map;
 public class PromptController {
 
     @Autowired
-    private com.ainexus.backend.repository.UserRepository userRepository;
+    private UserCache userCache;
 
     @Autowired
     private PromptAnalysisService promptAnalysisService;
 
+    @Autowired
+    private CreditLedger creditLedger;
+
     @PostMapping("/analyze")
     public ResponseEntity<PromptAnalysisResponse> analyze(
             @RequestBody Map<String, String> request,
@@ -30,18 +36,28 @@ public class PromptController {
             return ResponseEntity.badRequest().build();
         }
 
+        CreditLedger.Reservation credits = null;
         if (authentication != null) {
             String email = authentication.getName();
-            com.ainexus.backend.model.User user = userRepository.findByEmail(email).orElse(null);
-            if (user != null && user.isPremium()) {
-                if (user.getCredits() <= 0) {
+            UserCache.Snapshot user = userCache.get(email).orElse(null);
+            if (user != null && user.premium()) {
+                try {
+                    credits = creditLedger.reserve(email, 1);
+                } catch (InsufficientCreditsException e) {
                     return ResponseEntity.status(402).build(); // Payment Required / Insufficient Credits
                 }
-                user.setCredits(user.getCredits() - 1);
-                userRepository.save(user);
             }
         }
 
-        return ResponseEntity.ok(promptAnalysisService.analyzePrompt(prompt));
+        PromptAnalysisResponse analysis = promptAnalysisService.analyzePrompt(prompt);
+        if (credits != null) {
+            // The heuristic fallback means the model call failed, so it is not charged
+            if (analysis.isFallback()) {
+                credits.refund();
+            } else {
+                credits.commit();
+            }
+        }
+        return ResponseEntity.ok(analysis);
     }
 }
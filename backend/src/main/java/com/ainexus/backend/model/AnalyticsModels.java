@@ -18,6 +18,15 @@ public class AnalyticsModels {
         private double avgWordCount;
         private double avgTokensPerSecond;
         private long messageCount;
+        private long autoRoutedCount;
+        // Phase breakdown of avgResponseTime, over responses that recorded it
+        private double avgQueueMs;
+        private double avgEncodeMs;
+        private double avgFirstByteMs;
+        private double avgUpstreamMs;
+        private long totalPromptTokens;
+        private long totalCompletionTokens;
+        private long totalTokens;
     }
 
     @Data
@@ -1,8 +1,14 @@
 package com.ainexus.backend.model;
 
+import com.ainexus.backend.persistence.MessageContentConverter;
+import com.ainexus.backend.upstream.TokenCounter;
 import jakarta.persistence.*;
 import lombok.Data;
 import lombok.NoArgsConstructor;
+import org.hibernate.annotations.Mutability;
+import org.hibernate.type.descriptor.java.Immutability;
+
+import java.time.Instant;
 
 @Entity
 @Table(name = "chat_messages")
@@ -12,12 +18,20 @@ public class ChatMessage {
     @Id
     private String id;
 
-    @Column(columnDefinition = "TEXT")
-    private String content;
+    // Compressed at rest above persistence.compression.threshold; see getContent()
+    @Convert(converter = MessageContentConverter.class)
+    @Mutability(Immutability.class)
+    private MessageContent content;
+
+    // Estimated prompt tokens of the content, so context assembly can budget history without
+    // decompressing it; null on rows written before it was recorded
+    private Integer tokenCount;
 
     private boolean isUser;
-    private String timestamp;
+    private Instant timestamp;
     private String aiModel;
+    // Model the client asked for when it differs from aiModel, i.e. "auto" after routing
+    private String requestedModel;
 
     @Embedded
     private ResponseMetrics metrics;
@@ -25,4 +39,14 @@ public class ChatMessage {
     @ManyToOne(fetch = FetchType.LAZY)
     @JoinColumn(name = "conversation_id")
     private Conversation conversation;
+
+    // Decompresses on first call only
+    public String getContent() {
+        return content == null ? null : content.text();
+    }
+
+    public void setContent(String content) {
+        this.content = MessageContent.of(content);
+        this.tokenCount = content == null ? null : TokenCounter.estimate(content);
+    }
 }
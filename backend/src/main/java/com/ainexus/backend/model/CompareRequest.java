@@ -0,0 +1,19 @@
+package com.ainexus.backend.model;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.ArrayList;
+import java.util.List;
+
+@Data
+@NoArgsConstructor
+public class CompareRequest {
+    private String message;
+    private List<String> aiModels = new ArrayList<>();
+    private String conversationId;
+
+    @JsonProperty("isExpertAdvice")
+    private boolean isExpertAdvice;
+}
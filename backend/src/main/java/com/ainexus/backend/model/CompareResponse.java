@@ -0,0 +1,15 @@
+package com.ainexus.backend.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class CompareResponse {
+    private String conversationId;
+    private List<SendMessageResponse> responses;
+}
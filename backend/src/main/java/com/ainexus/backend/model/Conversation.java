@@ -3,6 +3,7 @@ package com.ainexus.backend.model;
 import jakarta.persistence.*;
 import lombok.Data;
 import lombok.NoArgsConstructor;
+import java.time.Instant;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -15,13 +16,26 @@ public class Conversation {
     private String id;
     
     private String aiModel;
-    private String createdAt;
-    private String updatedAt;
+    private Instant createdAt;
+    private Instant updatedAt;
+
+    // Rolling summary of the first summaryMessageCount messages. Written only through
+    // ConversationRepository.updateSummary so saving a stale Conversation never reverts it
+    @Column(columnDefinition = "TEXT", updatable = false)
+    private String summary;
+
+    @Column(updatable = false)
+    private Integer summaryMessageCount;
+
+    // Set while the messages live in conversation_archives; written only through ConversationRepository
+    @Column(updatable = false)
+    private Instant archivedAt;
 
     @ManyToOne(fetch = FetchType.LAZY)
     @JoinColumn(name = "user_id")
     private User user;
 
     @OneToMany(mappedBy = "conversation", cascade = CascadeType.ALL, orphanRemoval = true)
+    @OrderBy("timestamp ASC")
     private List<ChatMessage> messages = new ArrayList<>();
 }
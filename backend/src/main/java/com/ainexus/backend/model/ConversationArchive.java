@@ -0,0 +1,29 @@
+package com.ainexus.backend.model;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.Id;
+import jakarta.persistence.Table;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.Instant;
+
+// Messages of a cold conversation, moved out of chat_messages by ConversationArchiver
+@Entity
+@Table(name = "conversation_archives")
+@Data
+@NoArgsConstructor
+public class ConversationArchive {
+    @Id
+    private String conversationId;
+
+    private Instant archivedAt;
+    private int messageCount;
+
+    @Column(length = 120)
+    private String lastMessagePreview;
+
+    // gzip'd JSON array of the messages
+    private byte[] content;
+}
@@ -0,0 +1,18 @@
+package com.ainexus.backend.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.Instant;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class ConversationSummary {
+    private String id;
+    private String aiModel;
+    private Instant updatedAt;
+    private long messageCount;
+    private String lastMessagePreview; // first 120 characters of the newest message
+}
@@ -0,0 +1,15 @@
+package com.ainexus.backend.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class ConversationSummaryPage {
+    private List<ConversationSummary> conversations; // most recently updated first
+    private String nextCursor; // pass as "before" for the next page; null on the last page
+}
@@ -0,0 +1,69 @@
+package com.ainexus.backend.model;
+
+import java.util.Arrays;
+import java.util.function.Function;
+
+/**
+ * Text of a chat message as held by the entity. Content loaded from the database stays in its
+ * stored (possibly compressed) form until {@link #text()} is first called, so code that never
+ * reads it never pays for decompression.
+ */
+public final class MessageContent {
+
+    private final byte[] stored;
+    private final Function<byte[], String> decoder;
+    private volatile String text;
+
+    private MessageContent(String text, byte[] stored, Function<byte[], String> decoder) {
+        this.text = text;
+        this.stored = stored;
+        this.decoder = decoder;
+    }
+
+    public static MessageContent of(String text) {
+        return text == null ? null : new MessageContent(text, null, null);
+    }
+
+    public static MessageContent stored(byte[] stored, Function<byte[], String> decoder) {
+        return new MessageContent(null, stored, decoder);
+    }
+
+    public String text() {
+        String result = text;
+        if (result == null) {
+            result = decoder.apply(stored);
+            text = result;
+        }
+        return result;
+    }
+
+    /** The column value this content was loaded from, or null if it has not been written yet. */
+    public byte[] stored() {
+        return stored;
+    }
+
+    // Loaded values compare by their stored bytes, so dirty checking never decompresses
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof MessageContent other)) {
+            return false;
+        }
+        if (stored != null && other.stored != null) {
+            return Arrays.equals(stored, other.stored);
+        }
+        return text().equals(other.text());
+    }
+
+    @Override
+    public int hashCode() {
+        return text().hashCode();
+    }
+
+    @Override
+    public String toString() {
+        return text != null ? text : "<" + stored.length + " stored bytes>";
+    }
+}
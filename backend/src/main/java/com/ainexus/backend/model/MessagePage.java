@@ -0,0 +1,16 @@
+package com.ainexus.backend.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class MessagePage {
+    private String conversationId;
+    private List<MessageView> messages; // oldest first
+    private String nextCursor; // pass as "before" to load older messages; null once the start is reached
+}
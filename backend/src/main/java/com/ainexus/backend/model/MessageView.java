@@ -0,0 +1,28 @@
+package com.ainexus.backend.model;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.Instant;
+
+// Read-only projection of a ChatMessage, without the back reference to its conversation
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class MessageView {
+    private String id;
+    private String content;
+    @JsonProperty("isUser")
+    private boolean isUser;
+    private String aiModel;
+    private Instant timestamp;
+    private ResponseMetrics metrics;
+
+    // Used by the repository's constructor expressions; the page is returned whole, so content is decoded here
+    public MessageView(String id, MessageContent content, boolean isUser, String aiModel, Instant timestamp,
+                       ResponseMetrics metrics) {
+        this(id, content == null ? null : content.text(), isUser, aiModel, timestamp, metrics);
+    }
+}
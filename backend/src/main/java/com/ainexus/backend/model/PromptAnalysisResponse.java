@@ -1,15 +1,24 @@
 package com.ainexus.backend.model;
 
-import lombok.AllArgsConstructor;
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import lombok.Data;
 import lombok.NoArgsConstructor;
 
 @Data
-@AllArgsConstructor
 @NoArgsConstructor
 public class PromptAnalysisResponse {
     private int score; // 1-10
     private String critique;
     private String optimizedPrompt;
     private boolean canImprove;
+    // Set when the model could not be used and the score is the local heuristic, which is not charged
+    @JsonIgnore
+    private boolean fallback;
+
+    public PromptAnalysisResponse(int score, String critique, String optimizedPrompt, boolean canImprove) {
+        this.score = score;
+        this.critique = critique;
+        this.optimizedPrompt = optimizedPrompt;
+        this.canImprove = canImprove;
+    }
 }
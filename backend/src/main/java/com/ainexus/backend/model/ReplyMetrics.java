@@ -0,0 +1,15 @@
+package com.ainexus.backend.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+// What analytics needs of an AI reply; leaves out content, the bulk of each row
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class ReplyMetrics {
+    private String aiModel;
+    private String requestedModel;
+    private ResponseMetrics metrics;
+}
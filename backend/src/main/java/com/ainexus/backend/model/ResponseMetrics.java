@@ -1,6 +1,7 @@
 package com.ainexus.backend.model;
 
 import jakarta.persistence.Embeddable;
+import jakarta.persistence.Transient;
 import lombok.Data;
 import lombok.NoArgsConstructor;
 
@@ -12,9 +13,64 @@ public class ResponseMetrics {
     private int wordCount;
     private double tokensPerSecond;
 
+    // Only populated for streamed responses; nullable so pre-existing rows stay valid
+    private Long timeToFirstTokenMs;
+    private Double streamingTokensPerSecond;
+
+    // Served from ResponseCache; excluded from latency leaderboards
+    private Boolean cached;
+
+    // Shared the upstream call of an identical concurrent request (UpstreamSingleFlight), whose
+    // reply carries the usage and timings; excluded like cached
+    private Boolean coalesced;
+
+    // From the upstream usage block when usageReported, otherwise TokenCounter estimates
+    private Integer promptTokens;
+    private Integer completionTokens;
+    private Boolean usageReported;
+
+    // Breakdown of responseTimeMs: limiter queueing, context assembly and JSON encoding, upstream
+    // time to response headers, and upstream time until the body was fully read
+    private Long queueMs;
+    private Long encodeMs;
+    private Long upstreamFirstByteMs;
+    private Long upstreamTotalMs;
+
+    // Measured after this row is written, so only returned to the client; aggregate it from the
+    // chat.persist timer rather than from stored replies
+    @Transient
+    private Long persistMs;
+
     public ResponseMetrics(long responseTimeMs, int wordCount) {
         this.responseTimeMs = responseTimeMs;
         this.wordCount = wordCount;
         this.tokensPerSecond = responseTimeMs > 0 ? (wordCount * 1.3) / (responseTimeMs / 1000.0) : 0;
     }
+
+    public ResponseMetrics(long responseTimeMs, int wordCount, long timeToFirstTokenMs) {
+        this(responseTimeMs, wordCount);
+        this.timeToFirstTokenMs = timeToFirstTokenMs;
+    }
+
+    /**
+     * Records token counts and bases tokensPerSecond on them, over the upstream phase when it is
+     * known so that queueing and persistence no longer count against the model.
+     */
+    public void applyTokens(int promptTokens, int completionTokens, boolean usageReported) {
+        this.promptTokens = promptTokens;
+        this.completionTokens = completionTokens;
+        this.usageReported = usageReported;
+        long generationMs = upstreamTotalMs != null ? upstreamTotalMs : responseTimeMs;
+        this.tokensPerSecond = generationMs > 0 ? completionTokens / (generationMs / 1000.0) : 0;
+    }
+
+    /**
+     * Streamed responses: completion tokens (see {@link #applyTokens}, which must come first) per
+     * second from the first token to the last, i.e. excluding the wait for the first token. SSE
+     * chunks are not counted, as providers put any number of tokens in one.
+     */
+    public void applyStreamingRate(long firstToLastTokenMs) {
+        this.streamingTokensPerSecond = completionTokens != null && firstToLastTokenMs > 0
+                ? completionTokens / (firstToLastTokenMs / 1000.0) : null;
+    }
 }
@@ -4,6 +4,8 @@ import lombok.AllArgsConstructor;
 import lombok.Data;
 import lombok.NoArgsConstructor;
 
+import java.time.Instant;
+
 @Data
 @NoArgsConstructor
 @AllArgsConstructor
@@ -12,6 +14,6 @@ public class SendMessageResponse {
     private String content;
     private String aiModel;
     private String conversationId;
-    private String timestamp;
+    private Instant timestamp;
     private ResponseMetrics metrics;
 }
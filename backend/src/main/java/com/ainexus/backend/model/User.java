@@ -28,6 +28,8 @@ public class User {
     @Column(columnDefinition = "boolean default false")
     private boolean isPremium = false;
 
-    @Column(columnDefinition = "int default 300")
+    // Written on insert only; afterwards CreditLedger changes it with conditional updates, so a
+    // saved User cannot overwrite a concurrent debit with a stale balance
+    @Column(columnDefinition = "int default 300", updatable = false)
     private int credits = 300; // Default tokens/credits for new users
 }
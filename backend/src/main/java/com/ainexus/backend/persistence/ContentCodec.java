@@ -0,0 +1,116 @@
+package com.ainexus.backend.persistence;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Column format of {@code chat_messages.content}: one codec id byte followed by the payload,
+ * either the UTF-8 text ({@link #RAW}) or its raw deflate stream ({@link #DEFLATE}). Deflate
+ * is chosen over zstd because a deflate stream decodes from any prefix, which {@link #preview}
+ * relies on, while zstd only yields output for whole blocks.
+ */
+public final class ContentCodec {
+
+    public static final byte RAW = 0;
+    public static final byte DEFLATE = 1;
+
+    private ContentCodec() {
+    }
+
+    /**
+     * Deflates texts of at least {@code threshold} UTF-8 bytes at the given level (1 is the
+     * fastest), keeping the raw form when compression does not make them smaller. A negative
+     * threshold disables compression.
+     */
+    public static byte[] encode(byte[] utf8, int threshold, int level) {
+        if (threshold >= 0 && utf8.length >= threshold) {
+            byte[] compressed = deflate(utf8, level);
+            if (compressed.length < utf8.length) {
+                return withCodec(DEFLATE, compressed, compressed.length);
+            }
+        }
+        return withCodec(RAW, utf8, utf8.length);
+    }
+
+    public static String decode(byte[] stored) {
+        return switch (stored[0]) {
+            case RAW -> new String(stored, 1, stored.length - 1, StandardCharsets.UTF_8);
+            case DEFLATE -> inflate(stored, Integer.MAX_VALUE);
+            default -> throw new IllegalStateException("Unknown content codec " + stored[0]);
+        };
+    }
+
+    /**
+     * The first {@code maxChars} characters of the text whose stored form starts with
+     * {@code head}, which may be cut anywhere, e.g. by {@code substring(content from 1 for n)}.
+     */
+    public static String preview(byte[] head, int maxChars) {
+        if (head == null || head.length < 2) {
+            return head == null ? null : "";
+        }
+        String text = head[0] == DEFLATE
+                ? inflate(head, maxChars * 4)
+                : new String(head, 1, head.length - 1, StandardCharsets.UTF_8);
+        if (text.length() > maxChars) {
+            return text.substring(0, maxChars);
+        }
+        // A multi-byte character cut by the prefix decodes as a replacement character
+        int end = text.length();
+        while (end > 0 && text.charAt(end - 1) == '\uFFFD') {
+            end--;
+        }
+        return text.substring(0, end);
+    }
+
+    public static boolean isCompressed(byte[] stored) {
+        return stored.length > 0 && stored[0] == DEFLATE;
+    }
+
+    private static byte[] deflate(byte[] input, int level) {
+        Deflater deflater = new Deflater(level, true);
+        try {
+            deflater.setInput(input);
+            deflater.finish();
+            ByteArrayOutputStream out = new ByteArrayOutputStream(input.length / 2 + 16);
+            byte[] buffer = new byte[8192];
+            while (!deflater.finished()) {
+                out.write(buffer, 0, deflater.deflate(buffer));
+            }
+            return out.toByteArray();
+        } finally {
+            deflater.end();
+        }
+    }
+
+    // Inflates what it can, up to limit bytes of output; a truncated stream yields a prefix
+    private static String inflate(byte[] stored, int limit) {
+        Inflater inflater = new Inflater(true);
+        try {
+            inflater.setInput(stored, 1, stored.length - 1);
+            ByteArrayOutputStream out = new ByteArrayOutputStream(stored.length * 3);
+            byte[] buffer = new byte[8192];
+            while (!inflater.finished() && out.size() < limit) {
+                int n = inflater.inflate(buffer);
+                if (n == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    break;
+                }
+                out.write(buffer, 0, n);
+            }
+            return out.toString(StandardCharsets.UTF_8);
+        } catch (DataFormatException e) {
+            throw new IllegalStateException("Corrupt compressed message content", e);
+        } finally {
+            inflater.end();
+        }
+    }
+
+    private static byte[] withCodec(byte codec, byte[] payload, int length) {
+        byte[] stored = new byte[length + 1];
+        stored[0] = codec;
+        System.arraycopy(payload, 0, stored, 1, length);
+        return stored;
+    }
+}
@@ -0,0 +1,176 @@
+package com.ainexus.backend.persistence;
+
+import com.ainexus.backend.config.PersistenceConfig;
+import com.ainexus.backend.model.ChatMessage;
+import com.ainexus.backend.model.ConversationArchive;
+import com.ainexus.backend.repository.ChatMessageRepository;
+import com.ainexus.backend.repository.ChatMessageRepositoryCustom.Append;
+import com.ainexus.backend.repository.ConversationArchiveRepository;
+import com.ainexus.backend.repository.ConversationRepository;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.log4j.Log4j2;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.Optional;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Retention for idle conversations. Every {@code persistence.retention.interval}, conversations
+ * not updated for longer than their owner's tier allows ({@code free} or {@code premium}) have
+ * their messages moved out of {@code chat_messages} into a single gzip'd row of
+ * {@code conversation_archives}, which keeps the hot table, its indexes and the analytics scans
+ * over it small. The metrics of the archived replies are rolled up per day and model into
+ * {@code archived_reply_metrics}, which the analytics add to those of the hot rows.
+ * {@link #rehydrate} moves the messages back, and drops their rollup, when the conversation is
+ * opened again.
+ */
+@Log4j2
+@Component
+public class ConversationArchiver {
+
+    private static final TypeReference<List<MessageRecord>> MESSAGES = new TypeReference<>() {
+    };
+    private static final int PREVIEW_LENGTH = 120;
+
+    private final ConversationRepository conversationRepository;
+    private final ChatMessageRepository chatMessageRepository;
+    private final ConversationArchiveRepository archiveRepository;
+    private final PersistenceConfig.Retention settings;
+    private final ObjectMapper objectMapper;
+    private final TransactionTemplate transactionTemplate;
+
+    private final Counter archived;
+    private final DistributionSummary archivedBytes;
+    private final Timer rehydrations;
+
+    public ConversationArchiver(ConversationRepository conversationRepository,
+                                ChatMessageRepository chatMessageRepository,
+                                ConversationArchiveRepository archiveRepository, PersistenceConfig persistenceConfig,
+                                ObjectMapper objectMapper, TransactionTemplate transactionTemplate,
+                                MeterRegistry meterRegistry) {
+        this.conversationRepository = conversationRepository;
+        this.chatMessageRepository = chatMessageRepository;
+        this.archiveRepository = archiveRepository;
+        this.settings = persistenceConfig.getRetention();
+        this.objectMapper = objectMapper;
+        this.transactionTemplate = transactionTemplate;
+
+        this.archived = Counter.builder("chat.archive.conversations").register(meterRegistry);
+        this.archivedBytes = DistributionSummary.builder("chat.archive.size").baseUnit("bytes").register(meterRegistry);
+        this.rehydrations = Timer.builder("chat.archive.rehydrate").register(meterRegistry);
+    }
+
+    @Scheduled(fixedDelayString = "${persistence.retention.interval:1h}",
+            initialDelayString = "${persistence.retention.interval:1h}")
+    public void archiveIdleConversations() {
+        if (!settings.isEnabled()) {
+            return;
+        }
+        int count = archiveTier(false, settings.getFree()) + archiveTier(true, settings.getPremium());
+        if (count > 0) {
+            log.info("Archived {} idle conversations", count);
+        }
+    }
+
+    private int archiveTier(boolean premium, Duration retention) {
+        if (retention == null) {
+            return 0;
+        }
+        int count = 0;
+        Instant cutoff = Instant.now().minus(retention);
+        for (ConversationRepository.ColdConversation cold :
+                conversationRepository.findColdConversations(premium, cutoff, settings.getBatchSize())) {
+            try {
+                if (archive(cold.getId(), cold.getUpdatedAt())) {
+                    count++;
+                }
+            } catch (RuntimeException e) {
+                log.error("Failed to archive conversation {}", cold.getId(), e);
+            }
+        }
+        return count;
+    }
+
+    private boolean archive(String conversationId, Instant updatedAt) {
+        Boolean done = transactionTemplate.execute(status -> {
+            // Another instance got there first, or a message arrived since the scan
+            if (conversationRepository.markArchived(conversationId, updatedAt, Instant.now()) == 0) {
+                return false;
+            }
+            List<ChatMessage> messages = chatMessageRepository.findByConversationIdOrderByTimestampAscIdAsc(conversationId);
+            ConversationArchive archive = new ConversationArchive();
+            archive.setConversationId(conversationId);
+            archive.setArchivedAt(Instant.now());
+            archive.setMessageCount(messages.size());
+            if (!messages.isEmpty()) {
+                String last = messages.getLast().getContent();
+                archive.setLastMessagePreview(last == null ? null : last.substring(0, Math.min(last.length(), PREVIEW_LENGTH)));
+            }
+            archive.setContent(encode(messages.stream().map(MessageRecord::of).toList()));
+            archiveRepository.save(archive);
+            chatMessageRepository.archiveMessages(conversationId);
+            archivedBytes.record(archive.getContent().length);
+            return true;
+        });
+        if (Boolean.TRUE.equals(done)) {
+            archived.increment();
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Moves an archived conversation's messages back into {@code chat_messages}. Messages that
+     * were appended while it was being archived are kept. Safe to call concurrently.
+     */
+    public void rehydrate(String conversationId) {
+        rehydrations.record(() -> transactionTemplate.executeWithoutResult(status -> {
+            Optional<ConversationArchive> archive = archiveRepository.findForUpdateByConversationId(conversationId);
+            if (archive.isPresent()) {
+                List<ChatMessage> messages = decode(archive.get().getContent()).stream()
+                        .map(m -> m.toEntity(null))
+                        .toList();
+                chatMessageRepository.appendAll(List.of(new Append(conversationId, messages, null)));
+                // The replies are back in the hot table, which the analytics read as well
+                chatMessageRepository.deleteArchivedMetrics(conversationId);
+                archiveRepository.delete(archive.get());
+            }
+            conversationRepository.clearArchived(conversationId);
+        }));
+    }
+
+    private byte[] encode(List<MessageRecord> messages) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (OutputStream out = new GZIPOutputStream(bytes)) {
+            objectMapper.writeValue(out, messages);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    private List<MessageRecord> decode(byte[] content) {
+        try (InputStream in = new GZIPInputStream(new ByteArrayInputStream(content))) {
+            return objectMapper.readValue(in, MESSAGES);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
@@ -0,0 +1,9 @@
+package com.ainexus.backend.persistence;
+
+import java.time.Instant;
+import java.util.List;
+
+/** One acknowledged turn as stored in the journal: new messages of a conversation and its new updatedAt. */
+record JournalEntry(long seq, long journaledAt, String conversationId, Instant updatedAt,
+                    List<MessageRecord> messages) {
+}
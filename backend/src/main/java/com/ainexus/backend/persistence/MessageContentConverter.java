@@ -0,0 +1,81 @@
+package com.ainexus.backend.persistence;
+
+import com.ainexus.backend.config.PersistenceConfig;
+import com.ainexus.backend.model.MessageContent;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.persistence.AttributeConverter;
+import jakarta.persistence.Converter;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Maps {@link MessageContent} to the {@link ContentCodec} column format. Writing compresses above
+ * {@code persistence.compression.threshold}; reading only wraps the bytes, and decompression
+ * happens on the first {@link MessageContent#text()}. Created by Hibernate through Spring, so it
+ * can take configuration and report codec time and bytes saved.
+ */
+@Converter
+public class MessageContentConverter implements AttributeConverter<MessageContent, byte[]> {
+
+    private final PersistenceConfig.Compression settings;
+    private final Timer encodeTimer;
+    private final Timer decodeTimer;
+    private final Counter originalBytes;
+    private final Counter storedBytes;
+    private final Counter compressedMessages;
+
+    public MessageContentConverter(PersistenceConfig persistenceConfig, MeterRegistry meterRegistry) {
+        this.settings = persistenceConfig.getCompression();
+        this.encodeTimer = Timer.builder("chat.content.codec").tag("operation", "encode").register(meterRegistry);
+        this.decodeTimer = Timer.builder("chat.content.codec").tag("operation", "decode").register(meterRegistry);
+        // stored / original over written messages is the compression ratio at rest
+        this.originalBytes = Counter.builder("chat.content.bytes").tag("form", "original").baseUnit("bytes")
+                .register(meterRegistry);
+        this.storedBytes = Counter.builder("chat.content.bytes").tag("form", "stored").baseUnit("bytes")
+                .register(meterRegistry);
+        this.compressedMessages = Counter.builder("chat.content.compressed").register(meterRegistry);
+    }
+
+    @Override
+    public byte[] convertToDatabaseColumn(MessageContent content) {
+        if (content == null) {
+            return null;
+        }
+        if (content.stored() != null) {
+            return content.stored(); // unchanged since it was loaded
+        }
+        int threshold = settings.isEnabled() ? (int) settings.getThreshold().toBytes() : -1;
+        long start = System.nanoTime();
+        byte[] utf8 = content.text().getBytes(StandardCharsets.UTF_8);
+        byte[] stored = ContentCodec.encode(utf8, threshold, settings.getLevel());
+        encodeTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+
+        originalBytes.increment(utf8.length);
+        storedBytes.increment(stored.length);
+        if (ContentCodec.isCompressed(stored)) {
+            compressedMessages.increment();
+        }
+        return stored;
+    }
+
+    @Override
+    public MessageContent convertToEntityAttribute(byte[] stored) {
+        if (stored == null) {
+            return null;
+        }
+        return MessageContent.stored(stored, this::decode);
+    }
+
+    private String decode(byte[] stored) {
+        if (!ContentCodec.isCompressed(stored)) {
+            return ContentCodec.decode(stored);
+        }
+        long start = System.nanoTime();
+        String text = ContentCodec.decode(stored);
+        decodeTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        return text;
+    }
+}
@@ -0,0 +1,237 @@
+package com.ainexus.backend.persistence;
+
+import com.ainexus.backend.model.ChatMessage;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.extern.log4j.Log4j2;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.List;
+import java.util.stream.Stream;
+
+/**
+ * Append-only log of acknowledged turns, one JSON line per entry, split into segment files named
+ * after their first sequence number. A segment is deleted once every entry in it has reached the
+ * database and a newer segment has taken over. The highest sequence known to be in the database
+ * is kept in a checkpoint file, so entries of the active segment that were already drained are
+ * not written again after a restart (by then the conversation may have been cleared or archived).
+ * Entries that cannot be written to the database at all are moved to a dead-letter file.
+ */
+@Log4j2
+final class MessageJournal implements Closeable {
+
+    private static final String PREFIX = "journal-";
+    private static final String SUFFIX = ".log";
+    private static final String CHECKPOINT = "journal.checkpoint";
+    private static final String DEAD_LETTER = "dead-letter.log";
+
+    record Turn(String conversationId, Instant updatedAt, List<ChatMessage> messages) {
+    }
+
+    private static final class Segment {
+        final Path path;
+        long lastSeq = -1;
+
+        Segment(Path path) {
+            this.path = path;
+        }
+    }
+
+    private final Path directory;
+    private final long segmentBytes;
+    private final ObjectMapper objectMapper;
+
+    private final Deque<Segment> segments = new ArrayDeque<>(); // oldest first, the last one is active
+    private FileChannel active;
+    private long nextSeq;
+    private long checkpoint = -1;
+
+    MessageJournal(Path directory, long segmentBytes, ObjectMapper objectMapper) {
+        this.directory = directory;
+        this.segmentBytes = segmentBytes;
+        this.objectMapper = objectMapper;
+    }
+
+    /**
+     * Reads the entries left by the previous run that are not yet in the database, in order, and
+     * starts a new segment. A torn line (the process died mid-write, before the fsync acknowledged
+     * it) is skipped.
+     */
+    synchronized List<JournalEntry> open() throws IOException {
+        Files.createDirectories(directory);
+        Path checkpointFile = directory.resolve(CHECKPOINT);
+        if (Files.exists(checkpointFile)) {
+            checkpoint = Long.parseLong(Files.readString(checkpointFile, StandardCharsets.UTF_8).trim());
+            nextSeq = checkpoint + 1;
+        }
+        List<Path> files;
+        try (Stream<Path> listing = Files.list(directory)) {
+            files = listing.filter(MessageJournal::isSegment)
+                    .sorted(Comparator.comparingLong(MessageJournal::firstSeq))
+                    .toList();
+        }
+
+        List<JournalEntry> entries = new ArrayList<>();
+        for (Path file : files) {
+            Segment segment = new Segment(file);
+            try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    if (line.isBlank()) {
+                        continue;
+                    }
+                    try {
+                        JournalEntry entry = objectMapper.readValue(line, JournalEntry.class);
+                        segment.lastSeq = entry.seq();
+                        nextSeq = Math.max(nextSeq, entry.seq() + 1);
+                        if (entry.seq() > checkpoint) {
+                            entries.add(entry);
+                        }
+                    } catch (JsonProcessingException e) {
+                        log.warn("Ignoring a torn line in journal segment {}", file);
+                    }
+                }
+            }
+            if (segment.lastSeq <= checkpoint) {
+                Files.delete(file); // nothing in it was acknowledged, or all of it is in the database
+            } else {
+                segments.add(segment);
+            }
+        }
+        roll();
+        return entries;
+    }
+
+    /**
+     * Writes the turns as one group and returns once they are on disk. If that fails, the segment
+     * is cut back to where the group started, or abandoned for a new one if even that fails, so no
+     * torn line is left in front of later entries.
+     */
+    synchronized List<JournalEntry> append(List<Turn> turns) throws IOException {
+        long now = System.currentTimeMillis();
+        List<JournalEntry> entries = new ArrayList<>(turns.size());
+        StringBuilder lines = new StringBuilder();
+        for (Turn turn : turns) {
+            JournalEntry entry = new JournalEntry(nextSeq++, now, turn.conversationId(), turn.updatedAt(),
+                    turn.messages().stream().map(MessageRecord::of).toList());
+            lines.append(objectMapper.writeValueAsString(entry)).append('\n');
+            entries.add(entry);
+        }
+
+        ByteBuffer buffer = ByteBuffer.wrap(lines.toString().getBytes(StandardCharsets.UTF_8));
+        long start = active.size();
+        try {
+            while (buffer.hasRemaining()) {
+                active.write(buffer);
+            }
+            active.force(false);
+        } catch (IOException e) {
+            discardFrom(start);
+            throw e;
+        }
+        segments.getLast().lastSeq = entries.getLast().seq();
+
+        if (active.size() >= segmentBytes) {
+            roll();
+        }
+        return entries;
+    }
+
+    /**
+     * Records that every entry up to {@code drainedSeq} is in the database and deletes the
+     * segments, other than the active one, that hold nothing newer.
+     */
+    synchronized void release(long drainedSeq) throws IOException {
+        writeCheckpoint(drainedSeq);
+        while (segments.size() > 1 && segments.getFirst().lastSeq <= drainedSeq) {
+            Path path = segments.removeFirst().path;
+            try {
+                Files.deleteIfExists(path);
+            } catch (IOException e) {
+                log.warn("Could not delete drained journal segment {}", path, e);
+            }
+        }
+    }
+
+    /** Keeps an entry the database keeps rejecting, for an operator to look at, and fsyncs it. */
+    synchronized void deadLetter(JournalEntry entry) throws IOException {
+        byte[] line = (objectMapper.writeValueAsString(entry) + "\n").getBytes(StandardCharsets.UTF_8);
+        try (FileChannel channel = FileChannel.open(directory.resolve(DEAD_LETTER),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+            ByteBuffer buffer = ByteBuffer.wrap(line);
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            channel.force(false);
+        }
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (active != null) {
+            active.close();
+        }
+    }
+
+    private void discardFrom(long start) {
+        try {
+            active.truncate(start);
+            active.force(false);
+        } catch (IOException e) {
+            log.warn("Could not cut back journal segment {}, starting a new one", segments.getLast().path, e);
+            try {
+                roll();
+            } catch (IOException rollFailure) {
+                log.error("Could not start a new journal segment", rollFailure);
+            }
+        }
+    }
+
+    // Written to a temporary file and moved into place, so a crash leaves the old or the new value
+    private void writeCheckpoint(long drainedSeq) throws IOException {
+        if (drainedSeq <= checkpoint) {
+            return;
+        }
+        Path temp = directory.resolve(CHECKPOINT + ".tmp");
+        try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            channel.write(ByteBuffer.wrap(Long.toString(drainedSeq).getBytes(StandardCharsets.UTF_8)));
+            channel.force(false);
+        }
+        Files.move(temp, directory.resolve(CHECKPOINT), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        checkpoint = drainedSeq;
+    }
+
+    private void roll() throws IOException {
+        if (active != null) {
+            active.close();
+        }
+        Path path = directory.resolve(PREFIX + nextSeq + SUFFIX);
+        active = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        segments.add(new Segment(path));
+    }
+
+    private static boolean isSegment(Path path) {
+        String name = path.getFileName().toString();
+        return name.startsWith(PREFIX) && name.endsWith(SUFFIX);
+    }
+
+    private static long firstSeq(Path path) {
+        String name = path.getFileName().toString();
+        return Long.parseLong(name.substring(PREFIX.length(), name.length() - SUFFIX.length()));
+    }
+}
@@ -0,0 +1,35 @@
+package com.ainexus.backend.persistence;
+
+import com.ainexus.backend.model.ChatMessage;
+import com.ainexus.backend.model.Conversation;
+import com.ainexus.backend.model.MessageView;
+import com.ainexus.backend.model.ResponseMetrics;
+
+import java.time.Instant;
+
+// ChatMessage without the conversation back reference, as serialised to the journal and the archive
+record MessageRecord(String id, String content, boolean isUser, Instant timestamp, String aiModel,
+                     String requestedModel, ResponseMetrics metrics) {
+
+    static MessageRecord of(ChatMessage message) {
+        return new MessageRecord(message.getId(), message.getContent(), message.isUser(), message.getTimestamp(),
+                message.getAiModel(), message.getRequestedModel(), message.getMetrics());
+    }
+
+    ChatMessage toEntity(Conversation conversation) {
+        ChatMessage message = new ChatMessage();
+        message.setId(id);
+        message.setContent(content);
+        message.setUser(isUser);
+        message.setTimestamp(timestamp);
+        message.setAiModel(aiModel);
+        message.setRequestedModel(requestedModel);
+        message.setMetrics(metrics);
+        message.setConversation(conversation);
+        return message;
+    }
+
+    MessageView toView() {
+        return new MessageView(id, content, isUser, aiModel, timestamp, metrics);
+    }
+}
@@ -0,0 +1,361 @@
+package com.ainexus.backend.persistence;
+
+import com.ainexus.backend.config.PersistenceConfig;
+import com.ainexus.backend.model.ChatMessage;
+import com.ainexus.backend.model.Conversation;
+import com.ainexus.backend.model.MessageView;
+import com.ainexus.backend.repository.ChatMessageRepository;
+import com.ainexus.backend.repository.ChatMessageRepositoryCustom.Append;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.log4j.Log4j2;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.dao.TransientDataAccessException;
+import org.springframework.transaction.CannotCreateTransactionException;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Writes the messages of a finished turn. By default they go straight to the database; with
+ * {@code persistence.write-behind.enabled} the turn is acknowledged as soon as it is fsync'd to
+ * the local {@link MessageJournal}, in groups shared with concurrent turns, and a background
+ * writer drains the journal to the database in large batches. Entries still in the journal after
+ * a crash are written on the next startup.
+ * <p>
+ * Until a turn has been drained, {@link #includePending} adds its messages to conversations
+ * loaded from the database, so the next turn's context is complete regardless of drain lag.
+ */
+@Log4j2
+@Component
+public class MessageWriter implements SmartLifecycle {
+
+    private static final long POLL_MS = 100;
+
+    private record PendingWrite(MessageJournal.Turn turn, CompletableFuture<Void> ack) {
+    }
+
+    private final ChatMessageRepository chatMessageRepository;
+    private final PersistenceConfig.WriteBehind settings;
+    private final ObjectMapper objectMapper;
+
+    private final BlockingQueue<PendingWrite> incoming = new LinkedBlockingQueue<>();
+    private final BlockingQueue<JournalEntry> journaled = new LinkedBlockingQueue<>();
+    // Journaled but not yet drained, per conversation
+    private final Map<String, List<MessageRecord>> pending = new ConcurrentHashMap<>();
+
+    private MessageJournal journal;
+    private Thread journalThread;
+    private Thread drainThread;
+    private volatile boolean running;
+
+    private final Timer fsyncTimer;
+    private final DistributionSummary groupSize;
+    private final DistributionSummary batchSize;
+    private final Timer drainLag;
+    private final Counter fallbacks;
+    private final Counter deadLettered;
+
+    public MessageWriter(ChatMessageRepository chatMessageRepository, PersistenceConfig persistenceConfig,
+                         ObjectMapper objectMapper, MeterRegistry meterRegistry) {
+        this.chatMessageRepository = chatMessageRepository;
+        this.settings = persistenceConfig.getWriteBehind();
+        this.objectMapper = objectMapper;
+
+        Gauge.builder("chat.writebehind.queue", this, w -> w.incoming.size() + w.journaled.size())
+                .description("Turns acknowledged or waiting for the journal, not yet in the database")
+                .register(meterRegistry);
+        this.fsyncTimer = Timer.builder("chat.writebehind.fsync").register(meterRegistry);
+        this.groupSize = DistributionSummary.builder("chat.writebehind.group").baseUnit("turns").register(meterRegistry);
+        this.batchSize = DistributionSummary.builder("chat.writebehind.batch").baseUnit("messages").register(meterRegistry);
+        this.drainLag = Timer.builder("chat.writebehind.lag")
+                .description("Time from the journal acknowledgement to the database commit")
+                .register(meterRegistry);
+        this.fallbacks = Counter.builder("chat.writebehind.fallback").register(meterRegistry);
+        this.deadLettered = Counter.builder("chat.writebehind.deadletter")
+                .description("Journaled turns the database kept rejecting, moved to the dead-letter file")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Returns once the messages are durable, either in the database or, in write-behind mode, in
+     * the journal. Falls back to a direct write when the backlog exceeds
+     * {@code persistence.write-behind.max-queue} or the journal cannot be written.
+     */
+    public void append(String conversationId, List<ChatMessage> messages, Instant updatedAt) {
+        if (!running || incoming.size() + journaled.size() >= settings.getMaxQueue()) {
+            if (running) {
+                fallbacks.increment();
+            }
+            chatMessageRepository.appendToConversation(conversationId, messages, updatedAt);
+            return;
+        }
+
+        PendingWrite write = new PendingWrite(new MessageJournal.Turn(conversationId, updatedAt, messages),
+                new CompletableFuture<>());
+        incoming.add(write);
+        try {
+            write.ack().get(settings.getShutdownTimeout().toMillis(), TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while journaling messages", e);
+        } catch (ExecutionException | TimeoutException e) {
+            // Replay skips messages that are already stored, so a partially written group is harmless
+            log.warn("Journal write failed, writing conversation {} directly", conversationId, e);
+            fallbacks.increment();
+            chatMessageRepository.appendToConversation(conversationId, messages, updatedAt);
+        }
+    }
+
+    /** Adds the conversation's acknowledged but not yet drained messages to its loaded history. */
+    public Conversation includePending(Conversation conversation) {
+        List<MessageRecord> messages = pending.get(conversation.getId());
+        if (messages != null) {
+            Set<String> loaded = new HashSet<>();
+            conversation.getMessages().forEach(m -> loaded.add(m.getId()));
+            for (MessageRecord message : messages) {
+                if (!loaded.contains(message.id())) {
+                    conversation.getMessages().add(message.toEntity(conversation));
+                }
+            }
+        }
+        return conversation;
+    }
+
+    /** The conversation's acknowledged but not yet drained messages, for reads that bypass the entity. */
+    public List<MessageView> pendingViews(String conversationId) {
+        List<MessageRecord> messages = pending.get(conversationId);
+        return messages == null ? List.of() : messages.stream().map(MessageRecord::toView).toList();
+    }
+
+    /**
+     * Waits until the conversation has nothing left to drain, so that a delete is not followed
+     * by the late insert of messages written just before it.
+     */
+    public void awaitDrained(String conversationId) {
+        long deadline = System.nanoTime() + settings.getShutdownTimeout().toNanos();
+        try {
+            while (pending.containsKey(conversationId)) {
+                if (System.nanoTime() > deadline) {
+                    throw new RuntimeException("Messages of conversation " + conversationId + " are still being written");
+                }
+                Thread.sleep(POLL_MS / 10);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while waiting for pending messages", e);
+        }
+    }
+
+    @Override
+    public void start() {
+        if (!settings.isEnabled()) {
+            return;
+        }
+        journal = new MessageJournal(Path.of(settings.getDirectory()), settings.getSegmentSize().toBytes(), objectMapper);
+        try {
+            List<JournalEntry> replay = journal.open();
+            if (!replay.isEmpty()) {
+                log.info("Replaying {} journaled turns from {}", replay.size(), settings.getDirectory());
+            }
+            replay.forEach(this::enqueueForDrain);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot open the message journal in " + settings.getDirectory(), e);
+        }
+        running = true;
+        journalThread = Thread.ofPlatform().name("message-journal").daemon().start(this::journalLoop);
+        drainThread = Thread.ofPlatform().name("message-drain").daemon().start(this::drainLoop);
+    }
+
+    @Override
+    public void stop() {
+        if (!running) {
+            return;
+        }
+        running = false;
+        // Whatever is not drained in time stays in the journal for the next startup
+        try {
+            journalThread.join(settings.getShutdownTimeout());
+            drainThread.join(settings.getShutdownTimeout());
+            journal.close();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (IOException e) {
+            log.warn("Failed to close the message journal", e);
+        }
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+
+    // Starts before and stops after the web server, so no request finds the writer stopped
+    @Override
+    public int getPhase() {
+        return SmartLifecycle.DEFAULT_PHASE - 4096;
+    }
+
+    // Group commit: everything that arrived while the previous fsync ran shares the next one
+    private void journalLoop() {
+        List<PendingWrite> group = new ArrayList<>(settings.getMaxGroup());
+        while (running || !incoming.isEmpty()) {
+            try {
+                PendingWrite first = incoming.poll(POLL_MS, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                group.add(first);
+                incoming.drainTo(group, settings.getMaxGroup() - 1);
+
+                long start = System.nanoTime();
+                List<JournalEntry> entries = journal.append(group.stream().map(PendingWrite::turn).toList());
+                fsyncTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+                groupSize.record(group.size());
+
+                entries.forEach(this::enqueueForDrain);
+                group.forEach(write -> write.ack().complete(null));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (Exception e) {
+                group.forEach(write -> write.ack().completeExceptionally(e));
+            } finally {
+                group.clear();
+            }
+        }
+    }
+
+    private void enqueueForDrain(JournalEntry entry) {
+        pending.merge(entry.conversationId(), entry.messages(), (current, added) -> {
+            List<MessageRecord> merged = new ArrayList<>(current);
+            merged.addAll(added);
+            return List.copyOf(merged);
+        });
+        journaled.add(entry);
+    }
+
+    private void drainLoop() {
+        long stopDeadline = Long.MAX_VALUE;
+        int failures = 0;
+        List<JournalEntry> batch = new ArrayList<>();
+        while (running || journalThread.isAlive() || !journaled.isEmpty() || !batch.isEmpty()) {
+            if (!running && stopDeadline == Long.MAX_VALUE) {
+                stopDeadline = System.nanoTime() + settings.getShutdownTimeout().toNanos();
+            }
+            try {
+                if (batch.isEmpty() && !fill(batch)) {
+                    continue;
+                }
+                int inserted = failures >= settings.getMaxRetries() ? writeOrDeadLetter(batch) : write(batch);
+                failures = 0;
+                batchSize.record(inserted);
+                long now = System.currentTimeMillis();
+                for (JournalEntry entry : batch) {
+                    drainLag.record(now - entry.journaledAt(), TimeUnit.MILLISECONDS);
+                    removePending(entry);
+                }
+                journal.release(batch.getLast().seq());
+                batch.clear();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (Exception e) {
+                // The batch is kept and retried; the acknowledged turns are safe in the journal meanwhile.
+                // While the database is unreachable that goes on indefinitely; other errors are
+                // retried max-retries times before the batch is written turn by turn
+                if (!isTransient(e)) {
+                    failures++;
+                }
+                log.error("Failed to drain {} journaled turns, retrying", batch.size(), e);
+                if (System.nanoTime() > stopDeadline) {
+                    return;
+                }
+                try {
+                    Thread.sleep(settings.getRetryBackoff());
+                } catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }
+    }
+
+    // Takes turns in journal order until the batch holds batch-size messages
+    private boolean fill(List<JournalEntry> batch) throws InterruptedException {
+        JournalEntry entry = journaled.poll(POLL_MS, TimeUnit.MILLISECONDS);
+        int messages = 0;
+        while (entry != null) {
+            batch.add(entry);
+            messages += entry.messages().size();
+            entry = messages < settings.getBatchSize() ? journaled.poll() : null;
+        }
+        return !batch.isEmpty();
+    }
+
+    private int write(List<JournalEntry> batch) {
+        List<Append> appends = new ArrayList<>(batch.size());
+        for (JournalEntry entry : batch) {
+            appends.add(new Append(entry.conversationId(),
+                    entry.messages().stream().map(m -> m.toEntity(null)).toList(),
+                    entry.updatedAt()));
+        }
+        return chatMessageRepository.appendAll(appends);
+    }
+
+    // Writes each turn on its own, so only the ones the database rejects go to the dead-letter file
+    private int writeOrDeadLetter(List<JournalEntry> batch) throws IOException {
+        int inserted = 0;
+        for (JournalEntry entry : batch) {
+            try {
+                inserted += write(List.of(entry));
+            } catch (RuntimeException e) {
+                if (isTransient(e)) {
+                    throw e;
+                }
+                log.error("Moving journaled turn {} of conversation {} to the dead-letter file",
+                        entry.seq(), entry.conversationId(), e);
+                journal.deadLetter(entry);
+                deadLettered.increment();
+            }
+        }
+        return inserted;
+    }
+
+    private static boolean isTransient(Throwable e) {
+        return e instanceof TransientDataAccessException
+                || e instanceof DataAccessResourceFailureException
+                || e instanceof CannotCreateTransactionException;
+    }
+
+    private void removePending(JournalEntry entry) {
+        Set<String> drained = new HashSet<>();
+        entry.messages().forEach(m -> drained.add(m.id()));
+        pending.computeIfPresent(entry.conversationId(), (id, current) -> {
+            List<MessageRecord> remaining = current.stream()
+                    .filter(m -> !drained.contains(m.id()))
+                    .toList();
+            return remaining.isEmpty() ? null : remaining;
+        });
+    }
+}
@@ -0,0 +1,125 @@
+package com.ainexus.backend.persistence;
+
+import com.ainexus.backend.config.PersistenceConfig;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.log4j.Log4j2;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import javax.sql.DataSource;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Decides where read-only transactions run when a replica is configured (see
+ * {@link ReplicaRoutingDataSource}). Reads go to the primary instead while the replica's
+ * replay lag is above {@code persistence.replica.max-lag} or it cannot be reached, and for
+ * {@code read-your-writes} after the current user last wrote, so a history or list request
+ * right after sending a message sees that message.
+ */
+@Log4j2
+@Component
+public class ReadRouting {
+
+    // The primary's clock is not involved: an idle replica that has replayed everything reports 0
+    private static final String LAG_QUERY = "select case when not pg_is_in_recovery() then 0 " +
+            "when pg_last_wal_receive_lsn() = pg_last_wal_replay_lsn() then 0 " +
+            "else coalesce(extract(epoch from now() - pg_last_xact_replay_timestamp()), 0) end";
+
+    private static final ThreadLocal<Boolean> PINNED = new ThreadLocal<>();
+
+    private final PersistenceConfig.Replica settings;
+    private final JdbcTemplate replica;
+    // User email -> System.nanoTime() of their last write
+    private final Map<String, Long> lastWrites = new ConcurrentHashMap<>();
+
+    // Unknown until the first check, and the primary is used meanwhile
+    private volatile double lagSeconds = Double.NaN;
+    private volatile boolean replicaUsable;
+
+    private final Counter replicaReads;
+    private final Counter primaryReads;
+    private final Counter fallbacks;
+
+    public ReadRouting(PersistenceConfig persistenceConfig,
+                       @Qualifier("replicaDataSource") ObjectProvider<DataSource> replicaDataSource,
+                       MeterRegistry meterRegistry) {
+        this.settings = persistenceConfig.getReplica();
+        DataSource dataSource = replicaDataSource.getIfAvailable();
+        this.replica = dataSource == null ? null : new JdbcTemplate(dataSource);
+
+        Gauge.builder("chat.replica.lag", this, r -> r.lagSeconds).baseUnit("seconds").register(meterRegistry);
+        this.replicaReads = Counter.builder("chat.reads").tag("route", "replica").register(meterRegistry);
+        this.primaryReads = Counter.builder("chat.reads").tag("route", "primary").register(meterRegistry);
+        this.fallbacks = Counter.builder("chat.replica.fallback")
+                .description("Read-only connections taken from the primary because the replica failed")
+                .register(meterRegistry);
+    }
+
+    /** Records a write by the user, keeping their reads on the primary for the read-your-writes window. */
+    public void recordWrite(String userEmail) {
+        if (replica != null && userEmail != null) {
+            lastWrites.put(userEmail, System.nanoTime());
+        }
+    }
+
+    /**
+     * Pins the current thread's read-only transactions to the primary until {@link #unpin}, if
+     * {@code pin} is set or the user is inside their read-your-writes window.
+     */
+    public void pin(String userEmail, boolean pin) {
+        if (replica != null && (pin || wroteRecently(userEmail))) {
+            PINNED.set(Boolean.TRUE);
+        }
+    }
+
+    public void unpin() {
+        PINNED.remove();
+    }
+
+    boolean useReplica() {
+        boolean useReplica = replicaUsable && PINNED.get() == null;
+        (useReplica ? replicaReads : primaryReads).increment();
+        return useReplica;
+    }
+
+    // Takes the replica out of rotation until the next successful lag check
+    void replicaFailed(Exception e) {
+        if (replicaUsable) {
+            log.warn("Read replica unavailable, reading from the primary", e);
+        }
+        replicaUsable = false;
+        fallbacks.increment();
+    }
+
+    @Scheduled(fixedDelayString = "${persistence.replica.lag-check-interval:5s}")
+    public void checkLag() {
+        if (replica == null) {
+            return;
+        }
+        long expired = System.nanoTime() - settings.getReadYourWrites().toNanos();
+        lastWrites.values().removeIf(at -> at - expired < 0);
+        try {
+            Double lag = replica.queryForObject(LAG_QUERY, Double.class);
+            lagSeconds = lag == null ? 0 : lag;
+            boolean usable = lagSeconds * 1000 <= settings.getMaxLag().toMillis();
+            if (usable != replicaUsable) {
+                log.info("Read replica {} (lag {}s)", usable ? "in rotation" : "lagging, reading from the primary", lagSeconds);
+            }
+            replicaUsable = usable;
+        } catch (RuntimeException e) {
+            lagSeconds = Double.NaN;
+            replicaFailed(e);
+        }
+    }
+
+    private boolean wroteRecently(String userEmail) {
+        Long at = userEmail == null ? null : lastWrites.get(userEmail);
+        return at != null && System.nanoTime() - at < settings.getReadYourWrites().toNanos();
+    }
+}
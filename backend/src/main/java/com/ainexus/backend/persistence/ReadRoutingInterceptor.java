@@ -0,0 +1,55 @@
+package com.ainexus.backend.persistence;
+
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.stereotype.Component;
+import org.springframework.web.servlet.AsyncHandlerInterceptor;
+
+import java.security.Principal;
+import java.util.Set;
+
+/**
+ * Applies {@link ReadRouting} per request: requests that may write read from the primary and
+ * open the user's read-your-writes window, once when they start and again when they complete,
+ * which for a streamed reply is after its messages were written.
+ */
+@Component
+public class ReadRoutingInterceptor implements AsyncHandlerInterceptor {
+
+    private static final Set<String> READ_METHODS = Set.of("GET", "HEAD", "OPTIONS");
+
+    private final ReadRouting readRouting;
+
+    public ReadRoutingInterceptor(ReadRouting readRouting) {
+        this.readRouting = readRouting;
+    }
+
+    @Override
+    public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) {
+        String user = user(request);
+        boolean writes = !READ_METHODS.contains(request.getMethod());
+        if (writes) {
+            readRouting.recordWrite(user);
+        }
+        readRouting.pin(user, writes);
+        return true;
+    }
+
+    @Override
+    public void afterConcurrentHandlingStarted(HttpServletRequest request, HttpServletResponse response, Object handler) {
+        readRouting.unpin();
+    }
+
+    @Override
+    public void afterCompletion(HttpServletRequest request, HttpServletResponse response, Object handler, Exception ex) {
+        if (!READ_METHODS.contains(request.getMethod())) {
+            readRouting.recordWrite(user(request));
+        }
+        readRouting.unpin();
+    }
+
+    private static String user(HttpServletRequest request) {
+        Principal principal = request.getUserPrincipal();
+        return principal == null ? null : principal.getName();
+    }
+}
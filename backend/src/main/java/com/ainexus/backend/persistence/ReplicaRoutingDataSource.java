@@ -0,0 +1,48 @@
+package com.ainexus.backend.persistence;
+
+import org.springframework.jdbc.datasource.AbstractDataSource;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.SQLException;
+
+/**
+ * Target for read-only connections: the replica when {@link ReadRouting} allows it, otherwise,
+ * or if the replica cannot hand out a connection, the primary.
+ */
+public class ReplicaRoutingDataSource extends AbstractDataSource {
+
+    private final DataSource primary;
+    private final DataSource replica;
+    private final ReadRouting readRouting;
+
+    public ReplicaRoutingDataSource(DataSource primary, DataSource replica, ReadRouting readRouting) {
+        this.primary = primary;
+        this.replica = replica;
+        this.readRouting = readRouting;
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        if (readRouting.useReplica()) {
+            try {
+                return replica.getConnection();
+            } catch (SQLException e) {
+                readRouting.replicaFailed(e);
+            }
+        }
+        return primary.getConnection();
+    }
+
+    @Override
+    public Connection getConnection(String username, String password) throws SQLException {
+        if (readRouting.useReplica()) {
+            try {
+                return replica.getConnection(username, password);
+            } catch (SQLException e) {
+                readRouting.replicaFailed(e);
+            }
+        }
+        return primary.getConnection(username, password);
+    }
+}
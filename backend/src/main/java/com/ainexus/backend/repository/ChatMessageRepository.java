@@ -1,11 +1,190 @@
 package com.ainexus.backend.repository;
 
 import com.ainexus.backend.model.ChatMessage;
+import com.ainexus.backend.model.MessageView;
+import com.ainexus.backend.model.ReplyMetrics;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
 
+import java.time.Instant;
+import java.time.LocalDate;
 import java.util.List;
 
-public interface ChatMessageRepository extends JpaRepository<ChatMessage, String> {
-    List<ChatMessage> findByConversationUserEmail(String email);
-    List<ChatMessage> findAllByIsUserFalse();
+public interface ChatMessageRepository extends JpaRepository<ChatMessage, String>, ChatMessageRepositoryCustom {
+    interface DayBucket {
+        LocalDate getDay();
+        String getAiModel();
+        long getMessageCount();
+        Double getAvgResponseTime();
+    }
+
+    // AI replies in [from, to); served by idx_conversations_user_updated and idx_chat_messages_conversation_ts
+    @Query("select new com.ainexus.backend.model.ReplyMetrics(m.aiModel, m.requestedModel, m.metrics) " +
+            "from ChatMessage m where m.conversation.user.email = :email and m.isUser = false " +
+            "and m.timestamp >= :from and m.timestamp < :to")
+    List<ReplyMetrics> findRepliesByUserEmail(@Param("email") String email, @Param("from") Instant from,
+                                             @Param("to") Instant to);
+
+    // Served by idx_chat_messages_replies_ts
+    @Query("select new com.ainexus.backend.model.ReplyMetrics(m.aiModel, m.requestedModel, m.metrics) " +
+            "from ChatMessage m where m.isUser = false and m.timestamp >= :from and m.timestamp < :to")
+    List<ReplyMetrics> findReplies(@Param("from") Instant from, @Param("to") Instant to);
+
+    // Totals of archived replies for one model, see archived_reply_metrics
+    interface ArchivedTotals {
+        String getAiModel();
+        long getReplyCount();
+        long getAutoRoutedCount();
+        long getWordCountSum();
+        long getGeneratedCount();
+        double getResponseTimeSum();
+        double getTokensPerSecondSum();
+        double getQueueMsSum();
+        long getQueueMsCount();
+        double getEncodeMsSum();
+        long getEncodeMsCount();
+        double getFirstByteMsSum();
+        long getFirstByteMsCount();
+        double getUpstreamMsSum();
+        long getUpstreamMsCount();
+        long getPromptTokensSum();
+        long getCompletionTokensSum();
+    }
+
+    // Replies that called the upstream themselves, rather than being served from the response
+    // cache or by joining an identical in-flight call
+    String GENERATED = "m.cached is not true and m.coalesced is not true";
+
+    String REPLIES_IN_RANGE = "m.is_user = false and m.response_time_ms is not null " +
+            "and m.timestamp >= :from and m.timestamp < :to ";
+
+    // Archived replies are rolled up per UTC day; the analytics ranges are whole UTC days
+    String ARCHIVED_IN_RANGE = "cast(a.day as timestamp) at time zone 'UTC' >= :from " +
+            "and cast(a.day as timestamp) at time zone 'UTC' < :to ";
+
+    String ARCHIVED_TOTALS_SELECT = "select a.ai_model as aiModel, " +
+            "cast(sum(a.reply_count) as bigint) as replyCount, " +
+            "cast(sum(a.auto_routed_count) as bigint) as autoRoutedCount, " +
+            "cast(sum(a.word_count_sum) as bigint) as wordCountSum, " +
+            "cast(sum(a.generated_count) as bigint) as generatedCount, " +
+            "sum(a.response_time_sum) as responseTimeSum, sum(a.tokens_per_second_sum) as tokensPerSecondSum, " +
+            "sum(a.queue_ms_sum) as queueMsSum, cast(sum(a.queue_ms_count) as bigint) as queueMsCount, " +
+            "sum(a.encode_ms_sum) as encodeMsSum, cast(sum(a.encode_ms_count) as bigint) as encodeMsCount, " +
+            "sum(a.first_byte_ms_sum) as firstByteMsSum, cast(sum(a.first_byte_ms_count) as bigint) as firstByteMsCount, " +
+            "sum(a.upstream_ms_sum) as upstreamMsSum, cast(sum(a.upstream_ms_count) as bigint) as upstreamMsCount, " +
+            "cast(sum(a.prompt_tokens_sum) as bigint) as promptTokensSum, " +
+            "cast(sum(a.completion_tokens_sum) as bigint) as completionTokensSum " +
+            "from archived_reply_metrics a ";
+
+    @Query(value = ARCHIVED_TOTALS_SELECT +
+            "join conversations c on c.id = a.conversation_id join users u on u.id = c.user_id " +
+            "where u.email = :email and a.ai_model <> '' and " + ARCHIVED_IN_RANGE +
+            "group by a.ai_model", nativeQuery = true)
+    List<ArchivedTotals> findArchivedTotalsByUserEmail(@Param("email") String email, @Param("from") Instant from,
+                                                       @Param("to") Instant to);
+
+    // Served by idx_archived_reply_metrics_day
+    @Query(value = ARCHIVED_TOTALS_SELECT + "where a.ai_model <> '' and " + ARCHIVED_IN_RANGE +
+            "group by a.ai_model", nativeQuery = true)
+    List<ArchivedTotals> findArchivedTotals(@Param("from") Instant from, @Param("to") Instant to);
+
+    // Bucketed by UTC calendar day, over hot and archived replies. Replies that were not generated
+    // count towards volume but not towards the average
+    @Query(value = "select d.day as day, cast(null as varchar) as aiModel, " +
+            "cast(sum(d.replies) as bigint) as messageCount, " +
+            "sum(d.responseTime) / nullif(sum(d.generated), 0) as avgResponseTime from (" +
+            "select cast(m.timestamp at time zone 'UTC' as date) as day, count(*) as replies, " +
+            "sum(m.response_time_ms) filter (where " + GENERATED + ") as responseTime, " +
+            "count(*) filter (where " + GENERATED + ") as generated " +
+            "from chat_messages m join conversations c on c.id = m.conversation_id join users u on u.id = c.user_id " +
+            "where u.email = :email and " + REPLIES_IN_RANGE + "group by 1 " +
+            "union all select a.day, a.reply_count, a.response_time_sum, a.generated_count " +
+            "from archived_reply_metrics a join conversations c on c.id = a.conversation_id " +
+            "join users u on u.id = c.user_id where u.email = :email and " + ARCHIVED_IN_RANGE +
+            ") d group by 1 order by 1", nativeQuery = true)
+    List<DayBucket> findDailyActivity(@Param("email") String email, @Param("from") Instant from,
+                                      @Param("to") Instant to);
+
+    @Query(value = "select d.day as day, d.aiModel as aiModel, cast(sum(d.replies) as bigint) as messageCount, " +
+            "sum(d.responseTime) / nullif(sum(d.generated), 0) as avgResponseTime from (" +
+            "select cast(m.timestamp at time zone 'UTC' as date) as day, m.ai_model as aiModel, count(*) as replies, " +
+            "sum(m.response_time_ms) filter (where " + GENERATED + ") as responseTime, " +
+            "count(*) filter (where " + GENERATED + ") as generated " +
+            "from chat_messages m where m.ai_model is not null and " + REPLIES_IN_RANGE + "group by 1, 2 " +
+            "union all select a.day, a.ai_model, a.reply_count, a.response_time_sum, a.generated_count " +
+            "from archived_reply_metrics a where a.ai_model <> '' and " + ARCHIVED_IN_RANGE +
+            ") d group by 1, 2 order by 1", nativeQuery = true)
+    List<DayBucket> findDailyModelActivity(@Param("from") Instant from, @Param("to") Instant to);
+
+    List<ChatMessage> findByConversationIdOrderByTimestampAscIdAsc(String conversationId);
+
+    /**
+     * Deletes the conversation's messages in one statement, rolling the metrics of its replies up
+     * into archived_reply_metrics on the way out. Returns the number of rollup rows written.
+     */
+    @Modifying
+    @Transactional
+    @Query(value = "with moved as (delete from chat_messages m where m.conversation_id = :conversationId returning m.*) " +
+            "insert into archived_reply_metrics (conversation_id, day, ai_model, reply_count, auto_routed_count, " +
+            "word_count_sum, generated_count, response_time_sum, tokens_per_second_sum, queue_ms_sum, queue_ms_count, " +
+            "encode_ms_sum, encode_ms_count, first_byte_ms_sum, first_byte_ms_count, upstream_ms_sum, upstream_ms_count, " +
+            "prompt_tokens_sum, completion_tokens_sum) " +
+            "select m.conversation_id, cast(m.timestamp at time zone 'UTC' as date), coalesce(m.ai_model, ''), " +
+            "count(*), count(m.requested_model), coalesce(sum(m.word_count), 0), " +
+            "count(*) filter (where " + GENERATED + "), " +
+            "coalesce(sum(m.response_time_ms) filter (where " + GENERATED + "), 0), " +
+            "coalesce(sum(m.tokens_per_second) filter (where " + GENERATED + "), 0), " +
+            "coalesce(sum(m.queue_ms) filter (where " + GENERATED + "), 0), count(m.queue_ms) filter (where " + GENERATED + "), " +
+            "coalesce(sum(m.encode_ms) filter (where " + GENERATED + "), 0), count(m.encode_ms) filter (where " + GENERATED + "), " +
+            "coalesce(sum(m.upstream_first_byte_ms) filter (where " + GENERATED + "), 0), " +
+            "count(m.upstream_first_byte_ms) filter (where " + GENERATED + "), " +
+            "coalesce(sum(m.upstream_total_ms) filter (where " + GENERATED + "), 0), " +
+            "count(m.upstream_total_ms) filter (where " + GENERATED + "), " +
+            "coalesce(sum(m.prompt_tokens) filter (where " + GENERATED + "), 0), " +
+            "coalesce(sum(m.completion_tokens) filter (where " + GENERATED + "), 0) " +
+            "from moved m where m.is_user = false and m.response_time_ms is not null group by 1, 2, 3",
+            nativeQuery = true)
+    int archiveMessages(@Param("conversationId") String conversationId);
+
+    @Modifying
+    @Transactional
+    @Query(value = "delete from archived_reply_metrics where conversation_id = :conversationId", nativeQuery = true)
+    int deleteArchivedMetrics(@Param("conversationId") String conversationId);
+
+    // Served by idx_chat_messages_replies_model_ts
+    // Time to response headers, the latency UpstreamResilience observes on live calls; streamed
+    // replies are the ones with a time to first token
+    @Query("select m.metrics.upstreamFirstByteMs from ChatMessage m " +
+            "where m.aiModel = :model and m.isUser = false and m.metrics.upstreamFirstByteMs > 0 " +
+            "and m.metrics.timeToFirstTokenMs is not null " +
+            "and (m.metrics.cached is null or m.metrics.cached = false) " +
+            "and (m.metrics.coalesced is null or m.metrics.coalesced = false) order by m.timestamp desc")
+    List<Long> findRecentStreamedFirstByteTimes(@Param("model") String model, Pageable pageable);
+
+    @Query("select m.metrics.upstreamFirstByteMs from ChatMessage m " +
+            "where m.aiModel = :model and m.isUser = false and m.metrics.upstreamFirstByteMs > 0 " +
+            "and m.metrics.timeToFirstTokenMs is null " +
+            "and (m.metrics.cached is null or m.metrics.cached = false) " +
+            "and (m.metrics.coalesced is null or m.metrics.coalesced = false) order by m.timestamp desc")
+    List<Long> findRecentCompleteFirstByteTimes(@Param("model") String model, Pageable pageable);
+
+    // Keyset pagination, newest first, served by idx_chat_messages_conversation_ts. Read-only, so
+    // history pages are served by the replica when one is configured
+    @Transactional(readOnly = true)
+    @Query("select new com.ainexus.backend.model.MessageView(m.id, m.content, m.isUser, m.aiModel, m.timestamp, m.metrics) " +
+            "from ChatMessage m where m.conversation.id = :conversationId order by m.timestamp desc, m.id desc")
+    List<MessageView> findLatestMessages(@Param("conversationId") String conversationId, Pageable pageable);
+
+    @Transactional(readOnly = true)
+    @Query("select new com.ainexus.backend.model.MessageView(m.id, m.content, m.isUser, m.aiModel, m.timestamp, m.metrics) " +
+            "from ChatMessage m where m.conversation.id = :conversationId " +
+            "and (m.timestamp < :timestamp or (m.timestamp = :timestamp and m.id < :id)) " +
+            "order by m.timestamp desc, m.id desc")
+    List<MessageView> findMessagesBefore(@Param("conversationId") String conversationId,
+                                         @Param("timestamp") Instant timestamp, @Param("id") String id,
+                                         Pageable pageable);
 }
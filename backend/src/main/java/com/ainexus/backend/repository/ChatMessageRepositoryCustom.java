@@ -0,0 +1,31 @@
+package com.ainexus.backend.repository;
+
+import com.ainexus.backend.model.ChatMessage;
+
+import java.time.Instant;
+import java.util.List;
+
+public interface ChatMessageRepositoryCustom {
+
+    record Append(String conversationId, List<ChatMessage> messages, Instant updatedAt) {
+    }
+
+    /**
+     * Inserts new messages of one conversation and bumps its updatedAt, without loading or
+     * merging the rest of the conversation. Cost is independent of the conversation's length.
+     */
+    void appendToConversation(String conversationId, List<ChatMessage> messages, Instant updatedAt);
+
+    /**
+     * Appends the messages of many conversations in one transaction and one JDBC batch. Safe to
+     * repeat: messages that are already stored, or whose conversation has been deleted, are
+     * skipped, and updatedAt (when given) only moves forward. Returns the number of messages inserted.
+     */
+    int appendAll(List<Append> appends);
+
+    /**
+     * Deletes all messages of a conversation, hot or archived, and resets its summary, with
+     * set-based statements in one transaction. Returns the number of hot messages deleted.
+     */
+    int clearConversation(String conversationId, Instant updatedAt);
+}
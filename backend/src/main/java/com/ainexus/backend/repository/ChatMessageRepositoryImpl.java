@@ -0,0 +1,109 @@
+package com.ainexus.backend.repository;
+
+import com.ainexus.backend.model.ChatMessage;
+import com.ainexus.backend.model.Conversation;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import org.hibernate.Session;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.Instant;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+public class ChatMessageRepositoryImpl implements ChatMessageRepositoryCustom {
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    @Override
+    @Transactional
+    public void appendToConversation(String conversationId, List<ChatMessage> messages, Instant updatedAt) {
+        // A reference only carries the id, so the FK is written without loading or re-checking the conversation
+        Conversation conversation = entityManager.getReference(Conversation.class, conversationId);
+        for (ChatMessage message : messages) {
+            message.setConversation(conversation);
+            // persist rather than save(): ids are assigned, so save() would merge and SELECT each row first.
+            // The inserts go out as one JDBC batch (hibernate.jdbc.batch_size) when the update below flushes
+            entityManager.persist(message);
+        }
+        entityManager.createQuery("update Conversation c set c.updatedAt = :updatedAt where c.id = :id")
+                .setParameter("updatedAt", updatedAt)
+                .setParameter("id", conversationId)
+                .executeUpdate();
+    }
+
+    @Override
+    @Transactional
+    public int appendAll(List<Append> appends) {
+        Set<String> conversationIds = new HashSet<>();
+        Set<String> messageIds = new HashSet<>();
+        for (Append append : appends) {
+            conversationIds.add(append.conversationId());
+            append.messages().forEach(m -> messageIds.add(m.getId()));
+        }
+        if (messageIds.isEmpty()) {
+            return 0;
+        }
+        Set<String> live = new HashSet<>(entityManager
+                .createQuery("select c.id from Conversation c where c.id in :ids", String.class)
+                .setParameter("ids", conversationIds)
+                .getResultList());
+        Set<String> stored = new HashSet<>(entityManager
+                .createQuery("select m.id from ChatMessage m where m.id in :ids", String.class)
+                .setParameter("ids", messageIds)
+                .getResultList());
+
+        entityManager.unwrap(Session.class).setJdbcBatchSize(messageIds.size());
+        Map<String, Instant> updatedAt = new HashMap<>();
+        int inserted = 0;
+        for (Append append : appends) {
+            if (!live.contains(append.conversationId())) {
+                continue;
+            }
+            Conversation conversation = entityManager.getReference(Conversation.class, append.conversationId());
+            for (ChatMessage message : append.messages()) {
+                if (stored.add(message.getId())) {
+                    message.setConversation(conversation);
+                    entityManager.persist(message);
+                    inserted++;
+                }
+            }
+            if (append.updatedAt() != null) {
+                updatedAt.merge(append.conversationId(), append.updatedAt(), (a, b) -> a.isAfter(b) ? a : b);
+            }
+        }
+
+        for (Map.Entry<String, Instant> entry : updatedAt.entrySet()) {
+            entityManager.createQuery("update Conversation c set c.updatedAt = :updatedAt " +
+                            "where c.id = :id and (c.updatedAt is null or c.updatedAt < :updatedAt)")
+                    .setParameter("updatedAt", entry.getValue())
+                    .setParameter("id", entry.getKey())
+                    .executeUpdate();
+        }
+        return inserted;
+    }
+
+    @Override
+    @Transactional
+    public int clearConversation(String conversationId, Instant updatedAt) {
+        int deleted = entityManager.createQuery("delete from ChatMessage m where m.conversation.id = :id")
+                .setParameter("id", conversationId)
+                .executeUpdate();
+        entityManager.createQuery("delete from ConversationArchive a where a.conversationId = :id")
+                .setParameter("id", conversationId)
+                .executeUpdate();
+        entityManager.createNativeQuery("delete from archived_reply_metrics where conversation_id = :id")
+                .setParameter("id", conversationId)
+                .executeUpdate();
+        entityManager.createQuery("update Conversation c set c.summary = null, c.summaryMessageCount = null, " +
+                        "c.archivedAt = null, c.updatedAt = :updatedAt where c.id = :id")
+                .setParameter("updatedAt", updatedAt)
+                .setParameter("id", conversationId)
+                .executeUpdate();
+        return deleted;
+    }
+}
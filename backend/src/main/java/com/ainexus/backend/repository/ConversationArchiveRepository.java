@@ -0,0 +1,15 @@
+package com.ainexus.backend.repository;
+
+import com.ainexus.backend.model.ConversationArchive;
+import jakarta.persistence.LockModeType;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+
+import java.util.Optional;
+
+public interface ConversationArchiveRepository extends JpaRepository<ConversationArchive, String> {
+
+    // Concurrent rehydrations of the same conversation queue here; all but the first then find nothing
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    Optional<ConversationArchive> findForUpdateByConversationId(String conversationId);
+}
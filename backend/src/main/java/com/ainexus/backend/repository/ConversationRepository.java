@@ -1,9 +1,88 @@
 package com.ainexus.backend.repository;
 
 import com.ainexus.backend.model.Conversation;
+import org.springframework.data.jpa.repository.EntityGraph;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.Instant;
 import java.util.List;
+import java.util.Optional;
 
 public interface ConversationRepository extends JpaRepository<Conversation, String> {
-    List<Conversation> findByUserEmailOrderByUpdatedAtDesc(String email);
+    // Empty if the conversation does not exist or is not the user's, otherwise whether it is archived
+    @Query("select case when c.archivedAt is null then false else true end from Conversation c " +
+            "where c.id = :id and c.user.email = :email")
+    Optional<Boolean> findArchivedByIdAndUserEmail(@Param("id") String id, @Param("email") String email);
+
+    interface SummaryRow {
+        String getId();
+        String getAiModel();
+        Instant getUpdatedAt();
+        long getMessageCount();
+        byte[] getLastMessageHead(); // leading bytes of the stored content, see ContentCodec.preview
+        String getArchivedPreview();
+    }
+
+    // One statement per page: the count and preview are correlated subqueries that walk
+    // idx_chat_messages_conversation_ts, so no message entities or N+1 lazy loads are involved.
+    // Only a prefix of the newest message is read, whatever its size. Archived conversations
+    // report the count and preview recorded in their archive row
+    String SUMMARY_SELECT = "select c.id as id, c.ai_model as aiModel, c.updated_at as updatedAt, " +
+            "(select count(*) from chat_messages m where m.conversation_id = c.id) " +
+            "+ coalesce(a.message_count, 0) as messageCount, " +
+            "(select substring(m.content from 1 for 512) from chat_messages m where m.conversation_id = c.id " +
+            "order by m.timestamp desc, m.id desc limit 1) as lastMessageHead, " +
+            "a.last_message_preview as archivedPreview " +
+            "from conversations c join users u on u.id = c.user_id " +
+            "left join conversation_archives a on a.conversation_id = c.id where u.email = :email ";
+
+    @Query(value = SUMMARY_SELECT + "order by c.updated_at desc, c.id desc limit :limit", nativeQuery = true)
+    List<SummaryRow> findLatestSummaries(@Param("email") String email, @Param("limit") int limit);
+
+    @Query(value = SUMMARY_SELECT + "and (c.updated_at, c.id) < (:updatedAt, :id) " +
+            "order by c.updated_at desc, c.id desc limit :limit", nativeQuery = true)
+    List<SummaryRow> findSummariesBefore(@Param("email") String email, @Param("updatedAt") Instant updatedAt,
+                                         @Param("id") String id, @Param("limit") int limit);
+
+    // Fetches the messages in the same query, so the conversation is usable once the transaction ends
+    @EntityGraph(attributePaths = "messages")
+    Optional<Conversation> findWithMessagesById(String id);
+
+    // Only advances the summary if nobody else has moved it since it was read
+    @Modifying
+    @Transactional
+    @Query("update Conversation c set c.summary = :summary, c.summaryMessageCount = :newCount " +
+            "where c.id = :id and coalesce(c.summaryMessageCount, 0) = :expectedCount")
+    int updateSummary(@Param("id") String id, @Param("summary") String summary,
+                      @Param("expectedCount") int expectedCount, @Param("newCount") int newCount);
+
+    interface ColdConversation {
+        String getId();
+        Instant getUpdatedAt();
+    }
+
+    // Oldest first; served by idx_conversations_hot_updated
+    @Query(value = "select c.id as id, c.updated_at as updatedAt from conversations c " +
+            "join users u on u.id = c.user_id " +
+            "where c.archived_at is null and c.updated_at < :cutoff and u.is_premium = :premium " +
+            "order by c.updated_at limit :limit", nativeQuery = true)
+    List<ColdConversation> findColdConversations(@Param("premium") boolean premium, @Param("cutoff") Instant cutoff,
+                                                 @Param("limit") int limit);
+
+    // Claims the conversation for archiving only if no message was added since it was found cold
+    @Modifying
+    @Transactional
+    @Query("update Conversation c set c.archivedAt = :archivedAt " +
+            "where c.id = :id and c.archivedAt is null and c.updatedAt = :updatedAt")
+    int markArchived(@Param("id") String id, @Param("updatedAt") Instant updatedAt,
+                     @Param("archivedAt") Instant archivedAt);
+
+    @Modifying
+    @Transactional
+    @Query("update Conversation c set c.archivedAt = null where c.id = :id")
+    int clearArchived(@Param("id") String id);
 }
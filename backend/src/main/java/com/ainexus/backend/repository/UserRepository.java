@@ -2,8 +2,30 @@ package com.ainexus.backend.repository;
 
 import com.ainexus.backend.model.User;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
+
 import java.util.Optional;
 
 public interface UserRepository extends JpaRepository<User, Long> {
     Optional<User> findByEmail(String email);
+
+    // Takes the credits only if the balance covers them and returns the new balance; empty if it
+    // does not (or there is no such user)
+    @Transactional
+    @Query(value = "update users set credits = credits - :amount where email = :email and credits >= :amount " +
+            "returning credits", nativeQuery = true)
+    Optional<Integer> debitCredits(@Param("email") String email, @Param("amount") int amount);
+
+    @Transactional
+    @Query(value = "update users set credits = credits + :amount where email = :email returning credits",
+            nativeQuery = true)
+    Optional<Integer> addCredits(@Param("email") String email, @Param("amount") int amount);
+
+    @Modifying
+    @Transactional
+    @Query("update User u set u.isPremium = true, u.credits = u.credits + :bonus where u.email = :email")
+    int upgradeToPremium(@Param("email") String email, @Param("bonus") int bonus);
 }
@@ -2,6 +2,7 @@ package com.ainexus.backend.security;
 
 import com.ainexus.backend.model.User;
 import com.ainexus.backend.repository.UserRepository;
+import com.ainexus.backend.service.UserCache;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.security.oauth2.client.userinfo.DefaultOAuth2UserService;
 import org.springframework.security.oauth2.client.userinfo.OAuth2UserRequest;
@@ -17,6 +18,9 @@ public class CustomOAuth2UserService extends DefaultOAuth2UserService {
     @Autowired
     private UserRepository userRepository;
 
+    @Autowired
+    private UserCache userCache;
+
     @Override
     public OAuth2User loadUser(OAuth2UserRequest userRequest) throws OAuth2AuthenticationException {
         OAuth2User oAuth2User = super.loadUser(userRequest);
@@ -32,6 +36,7 @@ public class CustomOAuth2UserService extends DefaultOAuth2UserService {
             user.setFullName(name);
             user.setProvider("google");
             userRepository.save(user);
+            userCache.invalidate(email);
         }
         
         return oAuth2User;
@@ -1,52 +1,144 @@
 package com.ainexus.backend.security;
 
 import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.JwsHeader;
+import io.jsonwebtoken.JwtException;
+import io.jsonwebtoken.JwtParser;
 import io.jsonwebtoken.Jwts;
+import io.jsonwebtoken.LocatorAdapter;
 import io.jsonwebtoken.security.Keys;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 
 import javax.crypto.SecretKey;
+import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
+import java.security.Key;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.Date;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
 
+/**
+ * Issues and verifies the API's JWTs. Keys are derived once at startup: tokens are signed with
+ * {@code JWT_SECRET} and name it in their {@code kid} header, and tokens signed with one of
+ * {@code JWT_PREVIOUS_SECRETS} are still accepted, so the secret can be rotated without logging
+ * everyone out. Tokens issued before key ids were added are checked against the current key.
+ * <p>
+ * Verified tokens are remembered, by SHA-256 digest and until they expire, in an LRU of
+ * {@code JWT_VERIFIED_CACHE_SIZE} entries, so repeat requests with the same token skip the
+ * parse and HMAC.
+ */
 @Component
 public class JwtUtils {
 
-    @Value("${JWT_SECRET:very_secret_default_key_at_least_32_characters_long}")
-    private String jwtSecret;
+    private record Verified(Claims claims, long expiresAt) {
+    }
+
+    private final int jwtExpirationMs;
+    private final int cacheSize;
+    private final String currentKeyId;
+    private final SecretKey currentKey;
+    private final JwtParser parser;
+
+    private final LinkedHashMap<ByteBuffer, Verified> verified = new LinkedHashMap<>(16, 0.75f, true);
+
+    private final Counter hits;
+    private final Counter misses;
 
-    @Value("${JWT_EXPIRATION_MS:86400000}")
-    private int jwtExpirationMs;
+    public JwtUtils(@Value("${JWT_SECRET:very_secret_default_key_at_least_32_characters_long}") String jwtSecret,
+                    @Value("${JWT_PREVIOUS_SECRETS:}") List<String> previousSecrets,
+                    @Value("${JWT_EXPIRATION_MS:86400000}") int jwtExpirationMs,
+                    @Value("${JWT_VERIFIED_CACHE_SIZE:10000}") int cacheSize,
+                    MeterRegistry meterRegistry) {
+        this.jwtExpirationMs = jwtExpirationMs;
+        this.cacheSize = cacheSize;
+        this.currentKeyId = keyId(jwtSecret);
+        this.currentKey = Keys.hmacShaKeyFor(jwtSecret.getBytes(StandardCharsets.UTF_8));
 
-    private SecretKey getSigningKey() {
-        return Keys.hmacShaKeyFor(jwtSecret.getBytes(StandardCharsets.UTF_8));
+        Map<String, SecretKey> keys = new LinkedHashMap<>();
+        keys.put(currentKeyId, currentKey);
+        for (String secret : previousSecrets) {
+            if (!secret.isBlank()) {
+                keys.putIfAbsent(keyId(secret), Keys.hmacShaKeyFor(secret.getBytes(StandardCharsets.UTF_8)));
+            }
+        }
+        this.parser = Jwts.parser()
+                .keyLocator(new LocatorAdapter<Key>() {
+                    @Override
+                    protected Key locate(JwsHeader header) {
+                        return header.getKeyId() == null ? currentKey : keys.getOrDefault(header.getKeyId(), currentKey);
+                    }
+                })
+                .build();
+
+        this.hits = Counter.builder("auth.token.cache.hits").register(meterRegistry);
+        this.misses = Counter.builder("auth.token.cache.misses").register(meterRegistry);
     }
 
     public String generateToken(String email) {
         return Jwts.builder()
+                .header().keyId(currentKeyId).and()
                 .subject(email)
                 .issuedAt(new Date())
                 .expiration(new Date((new Date()).getTime() + jwtExpirationMs))
-                .signWith(getSigningKey())
+                .signWith(currentKey)
                 .compact();
     }
 
-    public String getEmailFromToken(String token) {
-        return Jwts.parser()
-                .verifyWith(getSigningKey())
-                .build()
-                .parseSignedClaims(token)
-                .getPayload()
-                .getSubject();
+    /** The token's claims if its signature is valid and it has not expired, in a single parse. */
+    public Optional<Claims> verify(String token) {
+        ByteBuffer digest = cacheSize > 0 ? digest(token) : null;
+        if (digest != null) {
+            Verified cached;
+            synchronized (verified) {
+                cached = verified.get(digest);
+            }
+            if (cached != null && System.currentTimeMillis() < cached.expiresAt()) {
+                hits.increment();
+                return Optional.of(cached.claims());
+            }
+            misses.increment();
+        }
+
+        Claims claims;
+        try {
+            claims = parser.parseSignedClaims(token).getPayload();
+        } catch (JwtException | IllegalArgumentException e) {
+            return Optional.empty();
+        }
+        // Tokens without an expiry are not ours to keep
+        if (digest != null && claims.getExpiration() != null) {
+            synchronized (verified) {
+                verified.put(digest, new Verified(claims, claims.getExpiration().getTime()));
+                if (verified.size() > cacheSize) {
+                    verified.remove(verified.keySet().iterator().next());
+                }
+            }
+        }
+        return Optional.of(claims);
+    }
+
+    // Identifies a secret without revealing it
+    private static String keyId(String secret) {
+        return HexFormat.of().formatHex(sha256(secret.getBytes(StandardCharsets.UTF_8)), 0, 8);
+    }
+
+    private static ByteBuffer digest(String token) {
+        return ByteBuffer.wrap(sha256(token.getBytes(StandardCharsets.US_ASCII)));
     }
 
-    public boolean validateToken(String token) {
+    private static byte[] sha256(byte[] bytes) {
         try {
-            Jwts.parser().verifyWith(getSigningKey()).build().parseSignedClaims(token);
-            return true;
-        } catch (Exception e) {
-            return false;
+            return MessageDigest.getInstance("SHA-256").digest(bytes);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
         }
     }
 }
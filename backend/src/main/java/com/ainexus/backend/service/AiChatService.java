@@ -1,35 +1,91 @@
 package com.ainexus.backend.service;
 
-import com.fasterxml.jackson.databind.JsonNode;
-import com.fasterxml.jackson.databind.ObjectMapper;
 import com.ainexus.backend.config.AIConfig;
 import com.ainexus.backend.model.ResponseMetrics;
 import com.ainexus.backend.model.ChatMessage;
+import com.ainexus.backend.model.CompareRequest;
+import com.ainexus.backend.model.CompareResponse;
 import com.ainexus.backend.model.Conversation;
+import com.ainexus.backend.model.ConversationSummary;
+import com.ainexus.backend.model.ConversationSummaryPage;
+import com.ainexus.backend.model.MessagePage;
+import com.ainexus.backend.model.MessageView;
 import com.ainexus.backend.model.SendMessageRequest;
 import com.ainexus.backend.model.SendMessageResponse;
 import com.ainexus.backend.model.User;
+import com.ainexus.backend.persistence.ContentCodec;
+import com.ainexus.backend.persistence.ConversationArchiver;
+import com.ainexus.backend.persistence.MessageWriter;
 import com.ainexus.backend.repository.ChatMessageRepository;
 import com.ainexus.backend.repository.ConversationRepository;
 import com.ainexus.backend.repository.UserRepository;
+import com.ainexus.backend.upstream.ChatCompletionRequest;
+import com.ainexus.backend.upstream.ConcurrencyLimiter;
+import com.ainexus.backend.upstream.EncodedHistoryCache;
+import com.ainexus.backend.upstream.LoadShedException;
+import com.ainexus.backend.upstream.TokenCounter;
+import com.ainexus.backend.upstream.UpstreamCodec;
+import com.ainexus.backend.upstream.UpstreamHttpClient;
+import com.ainexus.backend.upstream.UpstreamResilience;
+import com.ainexus.backend.upstream.UpstreamSingleFlight;
+import io.micrometer.core.instrument.MeterRegistry;
 import lombok.extern.log4j.Log4j2;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
-import java.net.URI;
-import java.net.http.HttpClient;
+import java.io.IOException;
+import java.io.InputStream;
 import java.net.http.HttpRequest;
 import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
 import java.time.Duration;
-import java.time.LocalDateTime;
+import java.time.Instant;
+import java.time.format.DateTimeParseException;
 import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 @Log4j2
 @Service
 public class AiChatService {
 
-    private static final ObjectMapper mapper = new ObjectMapper();
+    private static final String EXPERT_SYSTEM_PROMPT = "You are an expert consultant. Provide deep technical insights, critical analysis, and detailed explanations. Focus on accuracy and nuance.";
+    // Extra time the SSE connection stays open beyond the model's read timeout, for persistence
+    private static final Duration STREAM_GRACE = Duration.ofSeconds(10);
+    private static final int DEFAULT_PAGE_SIZE = 50;
+    private static final int MAX_PAGE_SIZE = 200;
+    private static final int PREVIEW_LENGTH = 120;
+    // Message page order, as in the repository's keyset queries
+    private static final Comparator<MessageView> NEWEST_FIRST = Comparator
+            .comparing(MessageView::getTimestamp)
+            .thenComparing(MessageView::getId)
+            .reversed();
+
     private final AIConfig aiConfig;
+    private final UpstreamHttpClient upstreamHttpClient;
+    private final UpstreamCodec upstreamCodec;
+    private final EncodedHistoryCache encodedHistoryCache;
+    private final ContextAssembler contextAssembler;
+    private final ResponseCache responseCache;
+    private final UpstreamSingleFlight upstreamSingleFlight;
+    private final UpstreamResilience upstreamResilience;
+    private final ConcurrencyLimiter concurrencyLimiter;
+    private final ModelRouter modelRouter;
+    private final MessageWriter messageWriter;
+    private final ConversationArchiver conversationArchiver;
+    private final CreditLedger creditLedger;
+    private final UserCache userCache;
+    private final MeterRegistry meterRegistry;
     
     @Autowired
     private UserRepository userRepository;
@@ -40,160 +96,692 @@ public class AiChatService {
     @Autowired
     private ChatMessageRepository chatMessageRepository;
 
-    public AiChatService(AIConfig aiConfig){
+    public AiChatService(AIConfig aiConfig, UpstreamHttpClient upstreamHttpClient, UpstreamCodec upstreamCodec,
+                         EncodedHistoryCache encodedHistoryCache, ContextAssembler contextAssembler,
+                         ResponseCache responseCache, UpstreamSingleFlight upstreamSingleFlight,
+                         UpstreamResilience upstreamResilience, ConcurrencyLimiter concurrencyLimiter,
+                         ModelRouter modelRouter, MessageWriter messageWriter,
+                         ConversationArchiver conversationArchiver, CreditLedger creditLedger,
+                         UserCache userCache, MeterRegistry meterRegistry){
         this.aiConfig = aiConfig;
+        this.upstreamHttpClient = upstreamHttpClient;
+        this.upstreamCodec = upstreamCodec;
+        this.encodedHistoryCache = encodedHistoryCache;
+        this.contextAssembler = contextAssembler;
+        this.responseCache = responseCache;
+        this.upstreamSingleFlight = upstreamSingleFlight;
+        this.upstreamResilience = upstreamResilience;
+        this.concurrencyLimiter = concurrencyLimiter;
+        this.modelRouter = modelRouter;
+        this.messageWriter = messageWriter;
+        this.conversationArchiver = conversationArchiver;
+        this.creditLedger = creditLedger;
+        this.userCache = userCache;
+        this.meterRegistry = meterRegistry;
     }
     
+    private record AiReply(String content, boolean cached, boolean coalesced, TurnStats stats) {
+        AiReply(String content, boolean cached, TurnStats stats) {
+            this(content, cached, false, stats);
+        }
+
+        AiReply(String content, boolean cached) {
+            this(content, cached, new TurnStats());
+        }
+    }
+
+    // Where the time of one upstream turn went; phases that did not run stay null
+    private static final class TurnStats {
+        Long queueMs;
+        Long encodeMs;
+        Long firstByteMs;
+        Long upstreamMs;
+        UpstreamCodec.Usage usage;
+        int estimatedPromptTokens;
+    }
+
+    /**
+     * Runs a turn in three phases so that no JDBC connection is held while waiting on the model:
+     * the conversation and its history are loaded in one short transaction, the upstream call runs
+     * with no persistence context (open-in-view is off), and the new messages are appended in a
+     * second short transaction.
+     */
     public SendMessageResponse sendMessage(SendMessageRequest request, String userEmail) {
-        User user = userRepository.findByEmail(userEmail)
-                .orElseThrow(() -> new RuntimeException("User not found"));
+        UserCache.Snapshot user = userCache.require(userEmail);
+
+        Conversation conversation = findConversation(request.getConversationId())
+                .orElseGet(() -> createConversation(request.getAiModel(), userReference(user)));
+
+        CreditLedger.Reservation credits = creditLedger.reserve(userEmail, request.isExpertAdvice() ? 1 : 0);
+
+        ChatMessage userMessage = buildUserMessage(request.getMessage(), conversation);
+        conversation.getMessages().add(userMessage);
+
+        String model = modelRouter.route(request.getAiModel(), false);
+        long startTime = System.currentTimeMillis();
+        AiReply aiReply;
+        try {
+            aiReply = generateAiResponse(conversation, conversation.getMessages(), model, request.isExpertAdvice());
+        } catch (RuntimeException e) {
+            // e.g. load shedding: nothing was answered, so the turn is dropped and the client retries it
+            credits.refund();
+            throw e;
+        }
+        settle(credits, aiReply.content());
+        long endTime = System.currentTimeMillis();
 
-        Conversation conversation = conversationRepository.findById(request.getConversationId())
-                .orElseGet(() -> createConversation(request.getAiModel(), user));
+        ChatMessage aiMessage = buildAiMessage(aiReply, model, endTime - startTime, conversation);
+        markRouted(aiMessage, request.getAiModel());
 
-        if (request.isExpertAdvice()) {
-            if (user.getCredits() <= 0) {
-                throw new RuntimeException("Insufficient credits for Expert Advice. Please upgrade or wait for a top-up!");
+        long persistStart = System.currentTimeMillis();
+        messageWriter.append(conversation.getId(), List.of(userMessage, aiMessage), Instant.now());
+        recordPersistTime(List.of(aiMessage), System.currentTimeMillis() - persistStart);
+
+        return toResponse(aiMessage, conversation);
+    }
+
+    /**
+     * Sends one prompt to several models at once. The user, conversation and credits are
+     * resolved once, the upstream calls run in parallel on virtual threads bounded by
+     * {@code openrouter.compare-deadline}, and all results are appended in one batch insert.
+     * {@value ModelRouter#AUTO} is routed like in {@link #sendMessage}, and models are deduplicated
+     * after routing, so each concrete model is asked once.
+     */
+    public CompareResponse compare(CompareRequest request, String userEmail) {
+        // Concrete model -> the name the client asked for it by, first request wins
+        Map<String, String> routed = new LinkedHashMap<>();
+        for (String requested : request.getAiModels()) {
+            routed.putIfAbsent(modelRouter.route(requested, false), requested);
+        }
+        List<String> models = List.copyOf(routed.keySet());
+        if (models.isEmpty()) {
+            throw new RuntimeException("At least one model is required for compare");
+        }
+
+        UserCache.Snapshot user = userCache.require(userEmail);
+
+        Conversation conversation = Optional.ofNullable(request.getConversationId())
+                .flatMap(this::findConversation)
+                .orElseGet(() -> createConversation(routed.get(models.get(0)), userReference(user)));
+
+        CreditLedger.Reservation credits = creditLedger.reserve(userEmail, request.isExpertAdvice() ? models.size() : 0);
+
+        ChatMessage userMessage = buildUserMessage(request.getMessage(), conversation);
+        conversation.getMessages().add(userMessage);
+        List<ChatMessage> history = List.copyOf(conversation.getMessages());
+
+        List<Callable<ChatMessage>> tasks = models.stream()
+                .<Callable<ChatMessage>>map(model -> () -> {
+                    long startTime = System.currentTimeMillis();
+                    AiReply aiReply = generateAiResponse(conversation, history, model, request.isExpertAdvice());
+                    return buildAiMessage(aiReply, model, System.currentTimeMillis() - startTime, conversation);
+                })
+                .toList();
+
+        Duration deadline = aiConfig.getCompareDeadline();
+        List<ChatMessage> aiMessages = new ArrayList<>(models.size());
+        // invokeAll cancels (interrupts) whatever is still running at the deadline, and closing
+        // the executor waits for those calls to unwind, so no upstream call outlives this method
+        try (ExecutorService scope = Executors.newVirtualThreadPerTaskExecutor()) {
+            List<Future<ChatMessage>> futures = scope.invokeAll(tasks, deadline.toMillis(), TimeUnit.MILLISECONDS);
+            for (int i = 0; i < futures.size(); i++) {
+                ChatMessage aiMessage = collectCompareResult(futures.get(i), models.get(i), deadline, conversation);
+                markRouted(aiMessage, routed.get(models.get(i)));
+                aiMessages.add(aiMessage);
             }
-            user.setCredits(user.getCredits() - 1);
-            userRepository.save(user);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            credits.refund();
+            throw new RuntimeException("Compare interrupted", e);
+        }
+        // One credit per model: the ones that failed or missed the deadline are given back
+        credits.refund((int) aiMessages.stream().filter(m -> isErrorReply(m.getContent())).count());
+        credits.commit();
+
+        List<ChatMessage> newMessages = new ArrayList<>(aiMessages.size() + 1);
+        newMessages.add(userMessage);
+        newMessages.addAll(aiMessages);
+        long persistStart = System.currentTimeMillis();
+        messageWriter.append(conversation.getId(), newMessages, Instant.now());
+        recordPersistTime(aiMessages, System.currentTimeMillis() - persistStart);
+
+        List<SendMessageResponse> responses = aiMessages.stream()
+                .map(m -> toResponse(m, conversation))
+                .toList();
+        return new CompareResponse(conversation.getId(), responses);
+    }
+
+    /**
+     * Streaming variant of {@link #sendMessage}: the upstream completion is requested with
+     * {@code stream: true} and each content delta is relayed to the client as a {@code token}
+     * event as soon as it arrives. The turn is persisted once, after the stream finishes, and a
+     * final {@code done} event carries the stored message with its time-to-first-token metrics.
+     */
+    public SseEmitter streamMessage(SendMessageRequest request, String userEmail) {
+        UserCache.Snapshot user = userCache.require(userEmail);
+
+        Conversation conversation = findConversation(request.getConversationId())
+                .orElseGet(() -> createConversation(request.getAiModel(), userReference(user)));
+
+        CreditLedger.Reservation credits = creditLedger.reserve(userEmail, request.isExpertAdvice() ? 1 : 0);
+
+        String model = modelRouter.route(request.getAiModel(), true);
+        StreamState state = new StreamState();
+        // Taken before the emitter is returned so that an overloaded model is reported as a 429
+        ConcurrencyLimiter.Permit permit;
+        try {
+            permit = concurrencyLimiter.acquire(model, aiConfig.getApiKeyForModel(model));
+            state.stats.queueMs = System.currentTimeMillis() - state.startTime;
+        } catch (LoadShedException e) {
+            credits.refund();
+            throw e;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            credits.refund();
+            throw new RuntimeException("Interrupted while waiting for " + model, e);
+        }
+
+        ChatMessage userMessage = buildUserMessage(request.getMessage(), conversation);
+        conversation.getMessages().add(userMessage);
+        List<ChatMessage> history = List.copyOf(conversation.getMessages());
+
+        SseEmitter emitter = new SseEmitter(aiConfig.getReadTimeout(model).plus(STREAM_GRACE).toMillis());
+        Thread.ofVirtual().name("sse-" + model).start(
+                () -> relayStream(emitter, permit, state, history, model, request, conversation, credits));
+        return emitter;
+    }
+
+    // Per-stream bookkeeping shared between the relay loop and the final persistence step
+    private static final class StreamState {
+        final StringBuilder content = new StringBuilder();
+        final long startTime = System.currentTimeMillis();
+        long firstTokenTime;
+        long lastTokenTime;
+        int chunks;
+        boolean completed;
+        boolean clientGone;
+        boolean cached;
+        final TurnStats stats = new TurnStats();
+
+        // Returns false once the client has gone away
+        boolean relay(SseEmitter emitter, String delta) {
+            lastTokenTime = System.currentTimeMillis();
+            if (chunks++ == 0) {
+                firstTokenTime = lastTokenTime;
+            }
+            content.append(delta);
+            try {
+                emitter.send(SseEmitter.event().name("token").data(delta));
+                return true;
+            } catch (IOException | IllegalStateException e) {
+                clientGone = true;
+                return false;
+            }
+        }
+    }
+
+    private void relayStream(SseEmitter emitter, ConcurrencyLimiter.Permit permit, StreamState state,
+                             List<ChatMessage> history, String model, SendMessageRequest request,
+                             Conversation conversation, CreditLedger.Reservation credits) {
+        boolean isExpertAdvice = request.isExpertAdvice();
+
+        try (permit) {
+            String modelIdentifier = aiConfig.getModelIdentifier(model);
+            String apiKey = aiConfig.getApiKeyForModel(model);
+            if (modelIdentifier == null || !upstreamHttpClient.hasCredentials(model, apiKey)) {
+                log.error("Missing configuration for model: {}", model);
+                state.content.append("AI Error: Configuration missing for model ").append(model);
+            } else {
+                long encodeStart = System.currentTimeMillis();
+                ContextAssembler.AssembledContext context = contextAssembler.assemble(conversation, history, model);
+                String cacheKey = responseCache.isEnabled()
+                        ? responseCache.key(modelIdentifier, isExpertAdvice, context.summary(), context.window())
+                        : null;
+                String cachedReply = cacheKey != null ? responseCache.get(cacheKey) : null;
+
+                if (cachedReply != null) {
+                    state.cached = true;
+                    state.relay(emitter, cachedReply);
+                } else {
+                    byte[] payload = encodeRequest(conversation.getId(), context, modelIdentifier, isExpertAdvice, true);
+                    state.stats.encodeMs = System.currentTimeMillis() - encodeStart;
+                    state.stats.estimatedPromptTokens = estimatePromptTokens(context, isExpertAdvice);
+                    HttpRequest.Builder rawRequest = upstreamHttpClient.newRequest(model, apiKey)
+                            .header("Accept", "text/event-stream")
+                            .POST(HttpRequest.BodyPublishers.ofByteArray(payload));
+                    relayUpstream(emitter, model, permit, rawRequest, state);
+                    if (cacheKey != null && state.completed && !state.content.isEmpty()) {
+                        responseCache.put(cacheKey, state.content.toString());
+                    }
+                }
+            }
+        } catch (Exception e) {
+            log.error("AI Streaming Error for model " + model, e);
+            if (state.content.isEmpty()) {
+                state.content.append("AI Error: ").append(e.getMessage());
+            }
+        }
+
+        long endTime = System.currentTimeMillis();
+        long duration = endTime - state.startTime;
+        String content = state.content.toString();
+        settle(credits, content);
+        ChatMessage aiMessage = buildAiMessage(content, model, duration, conversation);
+        markRouted(aiMessage, request.getAiModel());
+        boolean streamed = state.chunks > 0 && !state.cached;
+        if (streamed) {
+            aiMessage.setMetrics(new ResponseMetrics(duration, aiMessage.getMetrics().getWordCount(),
+                    state.firstTokenTime - state.startTime));
+        }
+        applyReply(aiMessage.getMetrics(), new AiReply(content, state.cached, state.stats));
+        if (streamed) {
+            aiMessage.getMetrics().applyStreamingRate(state.lastTokenTime - state.firstTokenTime);
+        }
+
+        try {
+            // The user's message is the last one in the history snapshot
+            long persistStart = System.currentTimeMillis();
+            messageWriter.append(conversation.getId(), List.of(history.getLast(), aiMessage), Instant.now());
+            recordPersistTime(List.of(aiMessage), System.currentTimeMillis() - persistStart);
+        } catch (Exception e) {
+            log.error("Failed to persist streamed message for model " + model, e);
+            if (!state.clientGone) {
+                emitter.completeWithError(e);
+            }
+            return;
+        }
+
+        if (!state.clientGone) {
+            try {
+                emitter.send(SseEmitter.event().name("done").data(toResponse(aiMessage, conversation)));
+                emitter.complete();
+            } catch (IOException | IllegalStateException e) {
+                log.info("Client disconnected before {} stream completed", model);
+            }
+        }
+    }
+
+    private void relayUpstream(SseEmitter emitter, String model, ConcurrencyLimiter.Permit permit,
+                               HttpRequest.Builder rawRequest, StreamState state) throws IOException, InterruptedException {
+        long sendStart = System.currentTimeMillis();
+        HttpResponse<Stream<String>> response = upstreamResilience.send(model, permit, rawRequest,
+                HttpResponse.BodyHandlers.ofLines(), true);
+        state.stats.firstByteMs = System.currentTimeMillis() - sendStart;
+        try (Stream<String> lines = response.body()) {
+            if (response.statusCode() != 200) {
+                log.error("API Error Response: {}", lines.collect(Collectors.joining("\n")));
+                state.content.append("API Error: HTTP ").append(response.statusCode());
+                return;
+            }
+            Iterator<String> it = lines.iterator();
+            while (it.hasNext()) {
+                String line = it.next();
+                // SSE comments (": OPENROUTER PROCESSING") and blank separators carry no data
+                if (!line.startsWith("data:")) {
+                    continue;
+                }
+                String data = line.substring(5).trim();
+                if ("[DONE]".equals(data)) {
+                    state.completed = true;
+                    return;
+                }
+                UpstreamCodec.StreamChunk chunk = upstreamCodec.decodeChunk(data);
+                if (chunk.usage() != null) {
+                    state.stats.usage = chunk.usage();
+                }
+                if (chunk.error() != null) {
+                    state.content.append("AI Error: ").append(chunk.error());
+                    return;
+                }
+                String delta = chunk.delta();
+                if (delta != null && !delta.isEmpty() && !state.relay(emitter, delta)) {
+                    log.info("Client disconnected from {} stream, keeping partial response", model);
+                    return;
+                }
+            }
+        } finally {
+            state.stats.upstreamMs = System.currentTimeMillis() - sendStart;
+        }
+    }
+
+    private ChatMessage collectCompareResult(Future<ChatMessage> future, String model, Duration deadline,
+                                             Conversation conversation) throws InterruptedException {
+        try {
+            return future.get();
+        } catch (CancellationException e) {
+            log.warn("Model {} exceeded compare deadline of {}", model, deadline);
+            // No metrics: a deadline cut-off is not a latency sample for the leaderboards
+            ChatMessage timedOut = buildAiMessage("AI Error: " + model + " did not respond within "
+                    + deadline.toSeconds() + "s", model, 0, conversation);
+            timedOut.setMetrics(null);
+            return timedOut;
+        } catch (ExecutionException e) {
+            log.error("Compare failed for model " + model, e.getCause());
+            return buildAiMessage("AI Error: " + e.getCause().getMessage(), model, 0, conversation);
+        }
+    }
+
+    // A turn that produced no answer is not charged; a partial stream the client left is
+    private static void settle(CreditLedger.Reservation credits, String content) {
+        if (content.isBlank() || isErrorReply(content)) {
+            credits.refund();
+        } else {
+            credits.commit();
         }
+    }
 
+    private ChatMessage buildUserMessage(String content, Conversation conversation) {
         ChatMessage userMessage = new ChatMessage();
         userMessage.setId(UUID.randomUUID().toString());
-        userMessage.setContent(request.getMessage());
+        userMessage.setContent(content);
         userMessage.setUser(true);
-        userMessage.setTimestamp(LocalDateTime.now().toString());
+        userMessage.setTimestamp(Instant.now());
         userMessage.setConversation(conversation);
-        conversation.getMessages().add(userMessage);
+        return userMessage;
+    }
 
-        long startTime = System.currentTimeMillis();
-        String aiResponse = generateAiResponse(conversation, request.getAiModel(), request.isExpertAdvice());
-        long endTime = System.currentTimeMillis();
-        
-        long duration = endTime - startTime;
-        int wordCount = aiResponse.trim().split("\\s+").length;
+    private ChatMessage buildAiMessage(AiReply aiReply, String model, long duration, Conversation conversation) {
+        ChatMessage aiMessage = buildAiMessage(aiReply.content(), model, duration, conversation);
+        applyReply(aiMessage.getMetrics(), aiReply);
+        return aiMessage;
+    }
+
+    private void applyReply(ResponseMetrics metrics, AiReply aiReply) {
+        if (aiReply.cached()) {
+            metrics.setCached(true);
+            return;
+        }
+        if (aiReply.coalesced()) {
+            metrics.setCoalesced(true);
+            return;
+        }
+        TurnStats stats = aiReply.stats();
+        metrics.setQueueMs(stats.queueMs);
+        metrics.setEncodeMs(stats.encodeMs);
+        metrics.setUpstreamFirstByteMs(stats.firstByteMs);
+        metrics.setUpstreamTotalMs(stats.upstreamMs);
+        if (stats.usage != null) {
+            metrics.applyTokens(stats.usage.promptTokens(), stats.usage.completionTokens(), true);
+        } else if (!isErrorReply(aiReply.content())) {
+            metrics.applyTokens(stats.estimatedPromptTokens, TokenCounter.estimate(aiReply.content()), false);
+        }
+    }
+
+    private void recordPersistTime(List<ChatMessage> aiMessages, long persistMs) {
+        for (ChatMessage aiMessage : aiMessages) {
+            if (aiMessage.getMetrics() != null) {
+                aiMessage.getMetrics().setPersistMs(persistMs);
+            }
+            meterRegistry.timer("chat.persist", "model", aiMessage.getAiModel()).record(Duration.ofMillis(persistMs));
+        }
+    }
+
+    private void markRouted(ChatMessage aiMessage, String requestedModel) {
+        if (!aiMessage.getAiModel().equals(requestedModel)) {
+            aiMessage.setRequestedModel(requestedModel);
+        }
+    }
+
+    private ChatMessage buildAiMessage(String aiResponse, String model, long duration, Conversation conversation) {
+        int wordCount = TokenCounter.countWords(aiResponse);
         ResponseMetrics metrics = new ResponseMetrics(duration, wordCount);
-        
+
         ChatMessage aiMessage = new ChatMessage();
         aiMessage.setId(UUID.randomUUID().toString());
         aiMessage.setContent(aiResponse);
         aiMessage.setUser(false);
-        aiMessage.setAiModel(request.getAiModel());
-        aiMessage.setTimestamp(LocalDateTime.now().toString());
+        aiMessage.setAiModel(model);
+        aiMessage.setTimestamp(Instant.now());
         aiMessage.setMetrics(metrics);
         aiMessage.setConversation(conversation);
-        conversation.getMessages().add(aiMessage);
-
-        conversation.setUpdatedAt(LocalDateTime.now().toString());
-        conversationRepository.save(conversation);
+        return aiMessage;
+    }
 
+    private SendMessageResponse toResponse(ChatMessage aiMessage, Conversation conversation) {
         SendMessageResponse response = new SendMessageResponse();
         response.setId(aiMessage.getId());
         response.setContent(aiMessage.getContent());
-        response.setAiModel(request.getAiModel());
+        response.setAiModel(aiMessage.getAiModel());
         response.setConversationId(conversation.getId());
         response.setTimestamp(aiMessage.getTimestamp());
-        response.setMetrics(metrics);
-        
+        response.setMetrics(aiMessage.getMetrics());
         return response;
     }
-    
+
     public Conversation getConversation(String conversationId) {
-        return conversationRepository.findById(conversationId).orElse(null);
+        return findConversation(conversationId).orElse(null);
     }
     
+    /**
+     * One page of a conversation's messages, starting from the newest. {@code before} is the
+     * {@code nextCursor} of the previous page, an opaque encoding of the (timestamp, id) of the
+     * oldest message returned so far. Messages still on their way to the database are included.
+     * Returns null if the conversation is not the user's.
+     */
+    public MessagePage getMessages(String conversationId, String userEmail, String before, Integer limit) {
+        Optional<Boolean> archived = conversationRepository.findArchivedByIdAndUserEmail(conversationId, userEmail);
+        if (archived.isEmpty()) {
+            return null;
+        }
+        if (archived.get()) {
+            conversationArchiver.rehydrate(conversationId);
+        }
+        int size = limit == null ? DEFAULT_PAGE_SIZE : Math.max(1, Math.min(limit, MAX_PAGE_SIZE));
+        // One extra row tells whether an older page exists without a count query
+        PageRequest page = PageRequest.of(0, size + 1);
+
+        // Read before the page: a message drained in between then shows up twice rather than not at all
+        List<MessageView> pending = messageWriter.pendingViews(conversationId);
+        Cursor cursor = before == null || before.isBlank() ? null : decodeCursor(before);
+        List<MessageView> newestFirst = cursor == null
+                ? chatMessageRepository.findLatestMessages(conversationId, page)
+                : chatMessageRepository.findMessagesBefore(conversationId, cursor.sortKey(), cursor.id(), page);
+        if (!pending.isEmpty()) {
+            newestFirst = mergePending(newestFirst, pending, cursor, size + 1);
+        }
+
+        boolean hasMore = newestFirst.size() > size;
+        List<MessageView> messages = new ArrayList<>(hasMore ? newestFirst.subList(0, size) : newestFirst);
+        String nextCursor = hasMore ? encodeCursor(messages.getLast().getTimestamp(), messages.getLast().getId()) : null;
+        Collections.reverse(messages);
+        return new MessagePage(conversationId, messages, nextCursor);
+    }
+
+    private static List<MessageView> mergePending(List<MessageView> stored, List<MessageView> pending, Cursor cursor,
+                                                  int limit) {
+        Set<String> ids = new HashSet<>();
+        stored.forEach(m -> ids.add(m.getId()));
+        List<MessageView> merged = new ArrayList<>(stored);
+        for (MessageView message : pending) {
+            if (ids.add(message.getId()) && (cursor == null || isBefore(message, cursor))) {
+                merged.add(message);
+            }
+        }
+        merged.sort(NEWEST_FIRST);
+        return merged.size() > limit ? merged.subList(0, limit) : merged;
+    }
+
+    private static boolean isBefore(MessageView message, Cursor cursor) {
+        int byTime = message.getTimestamp().compareTo(cursor.sortKey());
+        return byTime < 0 || (byTime == 0 && message.getId().compareTo(cursor.id()) < 0);
+    }
+
+    /** Conversations ordered by updatedAt, newest first, paginated like {@link #getMessages}. */
+    @Transactional(readOnly = true)
+    public ConversationSummaryPage getConversationSummaries(String userEmail, String before, Integer limit) {
+        int size = limit == null ? DEFAULT_PAGE_SIZE : Math.max(1, Math.min(limit, MAX_PAGE_SIZE));
+        List<ConversationRepository.SummaryRow> rows;
+        if (before == null || before.isBlank()) {
+            rows = conversationRepository.findLatestSummaries(userEmail, size + 1);
+        } else {
+            Cursor cursor = decodeCursor(before);
+            rows = conversationRepository.findSummariesBefore(userEmail, cursor.sortKey(), cursor.id(), size + 1);
+        }
+
+        boolean hasMore = rows.size() > size;
+        List<ConversationSummary> summaries = rows.stream()
+                .limit(size)
+                .map(r -> new ConversationSummary(r.getId(), r.getAiModel(), r.getUpdatedAt(), r.getMessageCount(),
+                        r.getLastMessageHead() != null
+                                ? ContentCodec.preview(r.getLastMessageHead(), PREVIEW_LENGTH)
+                                : r.getArchivedPreview()))
+                .toList();
+        String nextCursor = hasMore ? encodeCursor(summaries.getLast().getUpdatedAt(), summaries.getLast().getId()) : null;
+        return new ConversationSummaryPage(summaries, nextCursor);
+    }
+
+    record Cursor(Instant sortKey, String id) {
+    }
+
+    static String encodeCursor(Instant sortKey, String id) {
+        String key = sortKey + "\n" + id;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(key.getBytes(StandardCharsets.UTF_8));
+    }
+
+    static Cursor decodeCursor(String cursor) {
+        String[] parts = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8).split("\n", 2);
+        if (parts.length != 2) {
+            throw new IllegalArgumentException("Invalid cursor");
+        }
+        try {
+            return new Cursor(Instant.parse(parts[0]), parts[1]);
+        } catch (DateTimeParseException e) {
+            throw new IllegalArgumentException("Invalid cursor", e);
+        }
+    }
+
+    // The stored conversation, rehydrated if it was archived, plus any of its messages still on
+    // their way to the database
+    private Optional<Conversation> findConversation(String conversationId) {
+        Optional<Conversation> conversation = conversationRepository.findWithMessagesById(conversationId);
+        if (conversation.isPresent() && conversation.get().getArchivedAt() != null) {
+            conversationArchiver.rehydrate(conversationId);
+            conversation = conversationRepository.findWithMessagesById(conversationId);
+        }
+        return conversation.map(messageWriter::includePending);
+    }
+
+    // Only the foreign key is needed, so the users row is not read
+    private User userReference(UserCache.Snapshot user) {
+        return userRepository.getReferenceById(user.id());
+    }
+
     public Conversation createConversation(String aiModel, User user) {
         Conversation conversation = new Conversation();
         conversation.setId(UUID.randomUUID().toString());
         conversation.setAiModel(aiModel);
         conversation.setMessages(new ArrayList<>());
-        conversation.setCreatedAt(LocalDateTime.now().toString());
-        conversation.setUpdatedAt(LocalDateTime.now().toString());
+        conversation.setCreatedAt(Instant.now());
+        conversation.setUpdatedAt(conversation.getCreatedAt());
         conversation.setUser(user);
         
         return conversationRepository.save(conversation);
     }
     
     public void clearConversation(String conversationId) {
-        Conversation conversation = conversationRepository.findById(conversationId).orElse(null);
-        if (conversation != null) {
-            chatMessageRepository.deleteAll(conversation.getMessages());
-            conversation.getMessages().clear();
-            conversation.setUpdatedAt(LocalDateTime.now().toString());
-            conversationRepository.save(conversation);
-        }
-    }
-    
-    public List<Conversation> getUserConversations(String userEmail) {
-        return conversationRepository.findByUserEmailOrderByUpdatedAtDesc(userEmail);
+        messageWriter.awaitDrained(conversationId);
+        encodedHistoryCache.invalidate(conversationId);
+        chatMessageRepository.clearConversation(conversationId, Instant.now());
     }
 
-    private String generateAiResponse(Conversation conversation, String model, boolean isExpertAdvice) {
+    private AiReply generateAiResponse(Conversation conversation, List<ChatMessage> history, String model, boolean isExpertAdvice) {
         try {
             String modelIdentifier = aiConfig.getModelIdentifier(model);
             String apiKey = aiConfig.getApiKeyForModel(model);
-            if (modelIdentifier == null || apiKey == null) {
+            if (modelIdentifier == null || !upstreamHttpClient.hasCredentials(model, apiKey)) {
                 log.error("Missing configuration for model: {}", model);
-                return "AI Error: Configuration missing for model " + model;
-            }
-            
-            StringBuilder messagesJson = new StringBuilder();
-            
-            if (isExpertAdvice) {
-                messagesJson.append("{");
-                messagesJson.append("\"role\": \"system\",");
-                messagesJson.append("\"content\": \"You are an expert consultant. Provide deep technical insights, critical analysis, and detailed explanations. Focus on accuracy and nuance.\"");
-                messagesJson.append("},");
-            }
-
-            List<ChatMessage> history = conversation.getMessages();
-            for (int i = 0; i < history.size(); i++) {
-                ChatMessage m = history.get(i);
-                messagesJson.append("{");
-                messagesJson.append("\"role\": \"").append(m.isUser() ? "user" : "assistant").append("\",");
-                messagesJson.append("\"content\": \"").append(sanitizeJson(m.getContent())).append("\"");
-                messagesJson.append("}");
-                if (i < history.size() - 1) {
-                    messagesJson.append(",");
+                return new AiReply("AI Error: Configuration missing for model " + model, false);
+            }
+
+            long encodeStart = System.currentTimeMillis();
+            ContextAssembler.AssembledContext context = contextAssembler.assemble(conversation, history, model);
+            String cacheKey = responseCache.isEnabled()
+                    ? responseCache.key(modelIdentifier, isExpertAdvice, context.summary(), context.window())
+                    : null;
+            if (cacheKey != null) {
+                String cached = responseCache.get(cacheKey);
+                if (cached != null) {
+                    return new AiReply(cached, true);
                 }
             }
 
-            String jsonContent = "{" +
-                    "\"model\": \"" + modelIdentifier + "\"," +
-                    "\"messages\": [" + messagesJson.toString() + "]" +
-                    "}";
+            byte[] payload = encodeRequest(conversation.getId(), context, modelIdentifier, isExpertAdvice, false);
+            TurnStats stats = new TurnStats();
+            stats.encodeMs = System.currentTimeMillis() - encodeStart;
+            stats.estimatedPromptTokens = estimatePromptTokens(context, isExpertAdvice);
+            AiReply reply = upstreamSingleFlight.execute(UpstreamSingleFlight.key(model, payload),
+                    () -> callUpstream(model, apiKey, payload, stats));
+            if (reply.stats() != stats) {
+                // Joined another caller's upstream call: its usage and timings are recorded on the leader's reply
+                reply = new AiReply(reply.content(), false, true, stats);
+            }
+            if (cacheKey != null && !reply.content().isBlank() && !isErrorReply(reply.content())) {
+                responseCache.put(cacheKey, reply.content());
+            }
+            return reply;
+        } catch (LoadShedException e) {
+            throw e;
+        } catch (Exception e) {
+            log.error("AI Service Error for model " + model, e);
+            return new AiReply("AI Error: " + e.getMessage(), false);
+        }
+    }
 
-            HttpRequest rawRequest = HttpRequest.newBuilder()
-                    .uri(URI.create(aiConfig.getEndpoint()))
-                    .header("Authorization", "Bearer " + apiKey)
-                    .header("Content-Type", "application/json")
-                    .header("HTTP-Referer", "http://localhost:5173")
-                    .header("X-Title", "AI Nexus")
-                    .POST(HttpRequest.BodyPublishers.ofString(jsonContent))
-                    .timeout(Duration.ofSeconds(60))
-                    .build();
+    private AiReply callUpstream(String model, String apiKey, byte[] payload, TurnStats stats)
+            throws IOException, InterruptedException {
+        HttpRequest.Builder rawRequest = upstreamHttpClient.newRequest(model, apiKey)
+                .POST(HttpRequest.BodyPublishers.ofByteArray(payload));
 
-            HttpResponse<String> response = HttpClient.newHttpClient().send(rawRequest, HttpResponse.BodyHandlers.ofString());
+        long queueStart = System.currentTimeMillis();
+        try (ConcurrencyLimiter.Permit permit = concurrencyLimiter.acquire(model, apiKey)) {
+            long sendStart = System.currentTimeMillis();
+            stats.queueMs = sendStart - queueStart;
+            HttpResponse<InputStream> response = upstreamResilience.send(model, permit, rawRequest,
+                    HttpResponse.BodyHandlers.ofInputStream(), false);
+            stats.firstByteMs = System.currentTimeMillis() - sendStart;
+            try {
+                return readCompletion(response, stats);
+            } finally {
+                stats.upstreamMs = System.currentTimeMillis() - sendStart;
+            }
+        }
+    }
 
+    private AiReply readCompletion(HttpResponse<InputStream> response, TurnStats stats) throws IOException {
+        try (InputStream body = response.body()) {
             if (response.statusCode() != 200) {
-                log.error("API Error Response: {}", response.body());
-                return "API Error: HTTP " + response.statusCode();
+                log.error("API Error Response: {}", new String(body.readAllBytes(), StandardCharsets.UTF_8));
+                return new AiReply("API Error: HTTP " + response.statusCode(), false, stats);
             }
 
-            JsonNode root = mapper.readTree(response.body());
-            return root.path("choices").get(0).path("message").path("content").asText();
-        } catch (Exception e) {
-            log.error("AI Service Error for model " + model, e);
-            return "AI Error: " + e.getMessage();
+            UpstreamCodec.Completion completion = upstreamCodec.decodeCompletion(body);
+            stats.usage = completion.usage();
+            if (completion.error() != null) {
+                return new AiReply("AI Error: " + completion.error(), false, stats);
+            }
+            return new AiReply(completion.content() != null ? completion.content() : "", false, stats);
         }
     }
 
-    private String sanitizeJson(String input) {
-        return input.replace("\\", "\\\\")
-                .replace("\"", "\\\"")
-                .replace("\n", "\\n")
-                .replace("\r", "\\r")
-                .replace("\t", "\\t");
+    private static int estimatePromptTokens(ContextAssembler.AssembledContext context, boolean isExpertAdvice) {
+        return context.estimatedTokens() + (isExpertAdvice
+                ? TokenCounter.estimate(EXPERT_SYSTEM_PROMPT) + TokenCounter.PER_MESSAGE_OVERHEAD : 0);
+    }
+
+    private static boolean isErrorReply(String content) {
+        return content.startsWith("AI Error: ") || content.startsWith("API Error: ");
+    }
+
+    private byte[] encodeRequest(String conversationId, ContextAssembler.AssembledContext context,
+                                 String modelIdentifier, boolean isExpertAdvice, boolean stream) throws IOException {
+        List<ChatCompletionRequest.Message> leading = new ArrayList<>(2);
+        if (isExpertAdvice) {
+            leading.add(new ChatCompletionRequest.Message("system", EXPERT_SYSTEM_PROMPT));
+        }
+        if (context.summary() != null) {
+            leading.add(new ChatCompletionRequest.Message("system", "Summary of the earlier conversation:\n" + context.summary()));
+        }
+        byte[] encodedHistory = encodedHistoryCache.encode(conversationId, context.window());
+        return upstreamCodec.encodeBytes(new ChatCompletionRequest(modelIdentifier, leading, stream, null), encodedHistory);
     }
 }
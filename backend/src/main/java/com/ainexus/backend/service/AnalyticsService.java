@@ -1,11 +1,18 @@
 package com.ainexus.backend.service;
 
 import com.ainexus.backend.model.AnalyticsModels.*;
-import com.ainexus.backend.model.ChatMessage;
+import com.ainexus.backend.model.ReplyMetrics;
+import com.ainexus.backend.model.ResponseMetrics;
 import com.ainexus.backend.repository.ChatMessageRepository;
+import com.ainexus.backend.repository.ChatMessageRepository.ArchivedTotals;
+import com.ainexus.backend.repository.ChatMessageRepository.DayBucket;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
 import java.util.*;
 import java.util.stream.Collectors;
 
@@ -26,21 +33,31 @@ public class AnalyticsService {
         return MODEL_NAME_MAP.getOrDefault(modelId, modelId);
     }
 
-    public PersonalAnalytics getPersonalAnalytics(String userEmail) {
-        List<ChatMessage> messages = chatMessageRepository.findByConversationUserEmail(userEmail)
-                .stream().filter(m -> !m.isUser() && m.getMetrics() != null).collect(Collectors.toList());
+    /** Both bounds are optional UTC calendar days, inclusive; without them all history is covered. */
+    @Transactional(readOnly = true)
+    public PersonalAnalytics getPersonalAnalytics(String userEmail, LocalDate from, LocalDate to) {
+        Instant start = startOf(from);
+        Instant end = endOf(to);
+        List<ReplyMetrics> messages = chatMessageRepository.findRepliesByUserEmail(userEmail, start, end)
+                .stream().filter(m -> m.getMetrics() != null).collect(Collectors.toList());
 
-        List<ModelPerformanceStats> modelStats = aggregateByModel(messages);
-        List<DayMetrics> activityTrend = aggregateByDate(messages);
+        List<ModelPerformanceStats> modelStats = aggregateByModel(messages,
+                chatMessageRepository.findArchivedTotalsByUserEmail(userEmail, start, end));
+        List<DayMetrics> activityTrend = chatMessageRepository.findDailyActivity(userEmail, start, end).stream()
+                .map(day -> new DayMetrics(day.getDay().toString(), day.getMessageCount(), orZero(day.getAvgResponseTime())))
+                .collect(Collectors.toList());
 
         return new PersonalAnalytics(modelStats, activityTrend);
     }
 
-    public GlobalLeaderboard getGlobalLeaderboard() {
-        List<ChatMessage> allAiMessages = chatMessageRepository.findAllByIsUserFalse()
+    @Transactional(readOnly = true)
+    public GlobalLeaderboard getGlobalLeaderboard(LocalDate from, LocalDate to) {
+        Instant start = startOf(from);
+        Instant end = endOf(to);
+        List<ReplyMetrics> allAiMessages = chatMessageRepository.findReplies(start, end)
                 .stream().filter(m -> m.getMetrics() != null).collect(Collectors.toList());
 
-        List<ModelPerformanceStats> stats = aggregateByModel(allAiMessages);
+        List<ModelPerformanceStats> stats = aggregateByModel(allAiMessages, chatMessageRepository.findArchivedTotals(start, end));
 
         List<ModelPerformanceStats> topBySpeed = new ArrayList<>(stats);
         topBySpeed.sort(Comparator.comparingDouble(ModelPerformanceStats::getAvgResponseTime));
@@ -51,7 +68,7 @@ public class AnalyticsService {
         List<ModelPerformanceStats> topByEfficiency = new ArrayList<>(stats);
         topByEfficiency.sort(Comparator.comparingDouble(ModelPerformanceStats::getAvgTokensPerSecond).reversed());
 
-        List<GlobalUsageTrend> usageTrends = aggregateGlobalTrends(allAiMessages);
+        List<GlobalUsageTrend> usageTrends = aggregateGlobalTrends(chatMessageRepository.findDailyModelActivity(start, end));
 
         return new GlobalLeaderboard(
                 topBySpeed.stream().limit(5).collect(Collectors.toList()),
@@ -61,47 +78,134 @@ public class AnalyticsService {
         );
     }
 
-    private List<GlobalUsageTrend> aggregateGlobalTrends(List<ChatMessage> messages) {
-        Map<String, List<ChatMessage>> groupedByDate = messages.stream()
-                .filter(m -> m.getTimestamp() != null && m.getAiModel() != null)
-                .collect(Collectors.groupingBy(m -> m.getTimestamp().substring(0, 10)));
-
-        return groupedByDate.entrySet().stream().map(entry -> {
-            String date = entry.getKey();
-            List<ChatMessage> msgs = entry.getValue();
-            
-            Map<String, Long> counts = msgs.stream()
-                    .collect(Collectors.groupingBy(ChatMessage::getAiModel, Collectors.counting()));
-            
-            return new GlobalUsageTrend(date, counts, msgs.size());
-        }).sorted(Comparator.comparing(GlobalUsageTrend::getDate)).collect(Collectors.toList());
+    // Folds the database's (day, model) buckets, already in day order, into one trend entry per day
+    private List<GlobalUsageTrend> aggregateGlobalTrends(List<DayBucket> buckets) {
+        Map<LocalDate, GlobalUsageTrend> byDay = new LinkedHashMap<>();
+        for (DayBucket bucket : buckets) {
+            GlobalUsageTrend trend = byDay.computeIfAbsent(bucket.getDay(),
+                    day -> new GlobalUsageTrend(day.toString(), new HashMap<>(), 0));
+            trend.getModelCounts().put(bucket.getAiModel(), bucket.getMessageCount());
+            trend.setTotalCount(trend.getTotalCount() + bucket.getMessageCount());
+        }
+        return new ArrayList<>(byDay.values());
+    }
+
+    // Hot replies one by one, plus the totals of archived ones (see ConversationArchiver)
+    private List<ModelPerformanceStats> aggregateByModel(List<ReplyMetrics> messages, List<ArchivedTotals> archived) {
+        Map<String, ModelTotals> byModel = new HashMap<>();
+        for (ReplyMetrics message : messages) {
+            if (message.getAiModel() != null) {
+                byModel.computeIfAbsent(message.getAiModel(), k -> new ModelTotals()).add(message);
+            }
+        }
+        for (ArchivedTotals totals : archived) {
+            byModel.computeIfAbsent(totals.getAiModel(), k -> new ModelTotals()).add(totals);
+        }
+        return byModel.entrySet().stream()
+                .map(entry -> entry.getValue().toStats(entry.getKey(), getDisplayName(entry.getKey())))
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * Sums over one model's replies. Cache hits and coalesced replies count towards volume, but
+     * would flatter speed and throughput and repeat their leader's usage.
+     */
+    private static final class ModelTotals {
+        private long replies;
+        private long autoRouted;
+        private long words;
+        private long generated;
+        private double responseTime;
+        private double tokensPerSecond;
+        private final Phase queue = new Phase();
+        private final Phase encode = new Phase();
+        private final Phase firstByte = new Phase();
+        private final Phase upstream = new Phase();
+        private long promptTokens;
+        private long completionTokens;
+
+        void add(ReplyMetrics message) {
+            ResponseMetrics metrics = message.getMetrics();
+            replies++;
+            if (message.getRequestedModel() != null) {
+                autoRouted++;
+            }
+            words += metrics.getWordCount();
+            if (Boolean.TRUE.equals(metrics.getCached()) || Boolean.TRUE.equals(metrics.getCoalesced())) {
+                return;
+            }
+            promptTokens += orZero(metrics.getPromptTokens());
+            completionTokens += orZero(metrics.getCompletionTokens());
+            generated++;
+            responseTime += metrics.getResponseTimeMs();
+            tokensPerSecond += metrics.getTokensPerSecond();
+            queue.add(metrics.getQueueMs());
+            encode.add(metrics.getEncodeMs());
+            firstByte.add(metrics.getUpstreamFirstByteMs());
+            upstream.add(metrics.getUpstreamTotalMs());
+        }
+
+        void add(ArchivedTotals totals) {
+            replies += totals.getReplyCount();
+            autoRouted += totals.getAutoRoutedCount();
+            words += totals.getWordCountSum();
+            generated += totals.getGeneratedCount();
+            responseTime += totals.getResponseTimeSum();
+            tokensPerSecond += totals.getTokensPerSecondSum();
+            queue.add(totals.getQueueMsSum(), totals.getQueueMsCount());
+            encode.add(totals.getEncodeMsSum(), totals.getEncodeMsCount());
+            firstByte.add(totals.getFirstByteMsSum(), totals.getFirstByteMsCount());
+            upstream.add(totals.getUpstreamMsSum(), totals.getUpstreamMsCount());
+            promptTokens += totals.getPromptTokensSum();
+            completionTokens += totals.getCompletionTokensSum();
+        }
+
+        ModelPerformanceStats toStats(String modelId, String displayName) {
+            return new ModelPerformanceStats(modelId, displayName, average(responseTime, generated),
+                    average(words, replies), average(tokensPerSecond, generated), replies, autoRouted,
+                    queue.average(), encode.average(), firstByte.average(), upstream.average(),
+                    promptTokens, completionTokens, promptTokens + completionTokens);
+        }
+    }
+
+    // A phase timing, averaged over the replies that recorded it
+    private static final class Phase {
+        private double sum;
+        private long count;
+
+        void add(Long value) {
+            if (value != null) {
+                add(value, 1);
+            }
+        }
+
+        void add(double sum, long count) {
+            this.sum += sum;
+            this.count += count;
+        }
+
+        double average() {
+            return AnalyticsService.average(sum, count);
+        }
+    }
+
+    private static double average(double sum, long count) {
+        return count > 0 ? sum / count : 0;
+    }
+
+    private static long orZero(Integer value) {
+        return value != null ? value : 0;
+    }
+
+    private static double orZero(Double value) {
+        return value != null ? value : 0;
     }
 
-    private List<ModelPerformanceStats> aggregateByModel(List<ChatMessage> messages) {
-        Map<String, List<ChatMessage>> grouped = messages.stream()
-                .filter(m -> m.getAiModel() != null)
-                .collect(Collectors.groupingBy(ChatMessage::getAiModel));
-
-        return grouped.entrySet().stream().map(entry -> {
-            String modelId = entry.getKey();
-            List<ChatMessage> msgs = entry.getValue();
-            double avgTime = msgs.stream().mapToLong(m -> m.getMetrics().getResponseTimeMs()).average().orElse(0);
-            double avgWords = msgs.stream().mapToInt(m -> m.getMetrics().getWordCount()).average().orElse(0);
-            double avgTps = msgs.stream().mapToDouble(m -> m.getMetrics().getTokensPerSecond()).average().orElse(0);
-            return new ModelPerformanceStats(modelId, getDisplayName(modelId), avgTime, avgWords, avgTps, msgs.size());
-        }).collect(Collectors.toList());
+    private static Instant startOf(LocalDate from) {
+        return from != null ? from.atStartOfDay(ZoneOffset.UTC).toInstant() : Instant.EPOCH;
     }
 
-    private List<DayMetrics> aggregateByDate(List<ChatMessage> messages) {
-        Map<String, List<ChatMessage>> grouped = messages.stream()
-                .filter(m -> m.getTimestamp() != null)
-                .collect(Collectors.groupingBy(m -> m.getTimestamp().substring(0, 10))); // ISO date yyyy-MM-dd
-
-        return grouped.entrySet().stream().map(entry -> {
-            String date = entry.getKey();
-            List<ChatMessage> msgs = entry.getValue();
-            double avgTime = msgs.stream().mapToLong(m -> m.getMetrics().getResponseTimeMs()).average().orElse(0);
-            return new DayMetrics(date, msgs.size(), avgTime);
-        }).sorted(Comparator.comparing(DayMetrics::getDate)).collect(Collectors.toList());
+    private static Instant endOf(LocalDate to) {
+        return to != null ? to.plusDays(1).atStartOfDay(ZoneOffset.UTC).toInstant() : Instant.now();
     }
 }
@@ -22,6 +22,9 @@ public class AuthService {
     @Autowired
     private JwtUtils jwtUtils;
 
+    @Autowired
+    private UserCache userCache;
+
     public AuthResponse signup(SignupRequest request) {
         if (userRepository.findByEmail(request.getEmail()).isPresent()) {
             throw new RuntimeException("Email already in use");
@@ -38,6 +41,7 @@ public class AuthService {
 
         user.setCredits(300);
         userRepository.save(user);
+        userCache.invalidate(user.getEmail());
 
         String token = jwtUtils.generateToken(user.getEmail());
         return new AuthResponse(token, user.getEmail(), user.getFullName(), user.isPremium(), user.getCredits());
@@ -56,17 +60,17 @@ public class AuthService {
     }
 
     public AuthResponse getMe(String email) {
-        User user = userRepository.findByEmail(email)
-                .orElseThrow(() -> new RuntimeException("User not found"));
-        return new AuthResponse(null, user.getEmail(), user.getFullName(), user.isPremium(), user.getCredits());
+        UserCache.Snapshot user = userCache.require(email);
+        return new AuthResponse(null, user.email(), user.fullName(), user.premium(), user.credits());
     }
 
     public AuthResponse upgradeUser(String email) {
-        User user = userRepository.findByEmail(email)
-                .orElseThrow(() -> new RuntimeException("User not found"));
-        user.setPremium(true);
-        user.setCredits(user.getCredits() + 500); // Bonus credits on upgrade
-        userRepository.save(user);
-        return new AuthResponse(null, user.getEmail(), user.getFullName(), user.isPremium(), user.getCredits());
+        // Bonus credits on upgrade, added in place so concurrent reservations are not overwritten
+        if (userRepository.upgradeToPremium(email, 500) == 0) {
+            throw new RuntimeException("User not found");
+        }
+        userCache.invalidate(email);
+        UserCache.Snapshot user = userCache.require(email);
+        return new AuthResponse(null, user.email(), user.fullName(), user.premium(), user.credits());
     }
 }
@@ -0,0 +1,78 @@
+package com.ainexus.backend.service;
+
+import com.ainexus.backend.config.AIConfig;
+import com.ainexus.backend.model.ChatMessage;
+import com.ainexus.backend.model.Conversation;
+import com.ainexus.backend.upstream.TokenCounter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.stereotype.Service;
+
+import java.util.List;
+
+/**
+ * Fits a conversation into the model's token budget. The newest turns are sent verbatim;
+ * anything older is represented by the conversation's rolling summary, which
+ * {@link ConversationSummarizer} extends in the background whenever turns fall out of the window.
+ */
+@Service
+public class ContextAssembler {
+
+    public record AssembledContext(String summary, List<ChatMessage> window, int estimatedTokens) {
+    }
+
+    private final AIConfig aiConfig;
+    private final ConversationSummarizer conversationSummarizer;
+    private final MeterRegistry meterRegistry;
+
+    public ContextAssembler(AIConfig aiConfig, ConversationSummarizer conversationSummarizer, MeterRegistry meterRegistry) {
+        this.aiConfig = aiConfig;
+        this.conversationSummarizer = conversationSummarizer;
+        this.meterRegistry = meterRegistry;
+    }
+
+    public AssembledContext assemble(Conversation conversation, List<ChatMessage> history, String model) {
+        int budget = aiConfig.getContextBudget(model);
+
+        Integer covered = conversation.getSummaryMessageCount();
+        int summarized = covered != null ? Math.min(covered, history.size()) : 0;
+        String summary = summarized > 0 ? conversation.getSummary() : null;
+        int tokens = TokenCounter.estimate(summary);
+
+        // Walk back from the newest message; the latest turn is always kept even if it alone overflows
+        int start = history.size();
+        int foldUpTo = -1;
+        while (start > summarized) {
+            int cost = messageTokens(history.get(start - 1));
+            if (start < history.size() && tokens + cost > budget) {
+                break;
+            }
+            tokens += cost;
+            start--;
+            // Remember where the window would begin at half the budget; folding up to there
+            // leaves headroom so the summary is not regenerated on every turn
+            if (foldUpTo < 0 && tokens > budget / 2) {
+                foldUpTo = start;
+            }
+        }
+
+        if (start > summarized) {
+            int target = Math.max(start, foldUpTo);
+            conversationSummarizer.refreshAsync(conversation.getId(), summary, summarized,
+                    List.copyOf(history.subList(summarized, target)));
+        }
+
+        DistributionSummary.builder("context.tokens.sent")
+                .description("Estimated prompt tokens sent upstream per turn")
+                .tag("model", model)
+                .register(meterRegistry)
+                .record(tokens);
+
+        return new AssembledContext(summary, history.subList(start, history.size()), tokens);
+    }
+
+    static int messageTokens(ChatMessage message) {
+        Integer tokens = message.getTokenCount();
+        return (tokens != null ? tokens : TokenCounter.estimate(message.getContent())) + TokenCounter.PER_MESSAGE_OVERHEAD;
+    }
+}
@@ -0,0 +1,140 @@
+package com.ainexus.backend.service;
+
+import com.ainexus.backend.config.AIConfig;
+import com.ainexus.backend.model.ChatMessage;
+import com.ainexus.backend.repository.ConversationRepository;
+import com.ainexus.backend.upstream.ChatCompletionRequest;
+import com.ainexus.backend.upstream.CircuitOpenException;
+import com.ainexus.backend.upstream.ConcurrencyLimiter;
+import com.ainexus.backend.upstream.LoadShedException;
+import com.ainexus.backend.upstream.UpstreamCodec;
+import com.ainexus.backend.upstream.UpstreamHttpClient;
+import com.ainexus.backend.upstream.UpstreamResilience;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.log4j.Log4j2;
+import org.springframework.stereotype.Service;
+
+import java.io.InputStream;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Maintains each conversation's rolling summary off the request path. Every refresh folds the
+ * turns that dropped out of the context window into the previous summary, at most one summary
+ * model's budget worth of turns at a time, so long backlogs catch up over several turns.
+ * Calls go through the same concurrency limit and circuit breaker as chat; when the summary
+ * model is shedding load the fold is skipped and picked up again by a later turn.
+ */
+@Log4j2
+@Service
+public class ConversationSummarizer {
+
+    private static final String SUMMARY_SYSTEM_PROMPT = "You maintain a running summary of a conversation between a user and AI assistants. " +
+            "Merge the new messages into the existing summary. Keep facts, decisions, code identifiers and open questions; " +
+            "drop pleasantries. Reply with the updated summary only, in under 300 words.";
+
+    private final AIConfig aiConfig;
+    private final UpstreamHttpClient upstreamHttpClient;
+    private final UpstreamCodec upstreamCodec;
+    private final ConcurrencyLimiter concurrencyLimiter;
+    private final UpstreamResilience upstreamResilience;
+    private final ConversationRepository conversationRepository;
+
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+    private final Set<String> inFlight = ConcurrentHashMap.newKeySet();
+
+    public ConversationSummarizer(AIConfig aiConfig, UpstreamHttpClient upstreamHttpClient, UpstreamCodec upstreamCodec,
+                                  ConcurrencyLimiter concurrencyLimiter, UpstreamResilience upstreamResilience,
+                                  ConversationRepository conversationRepository) {
+        this.aiConfig = aiConfig;
+        this.upstreamHttpClient = upstreamHttpClient;
+        this.upstreamCodec = upstreamCodec;
+        this.concurrencyLimiter = concurrencyLimiter;
+        this.upstreamResilience = upstreamResilience;
+        this.conversationRepository = conversationRepository;
+    }
+
+    /**
+     * Schedules folding {@code pending} (the messages directly after the first
+     * {@code summarizedCount} ones) into {@code previousSummary}. No-op if a refresh for the
+     * conversation is already running.
+     */
+    public void refreshAsync(String conversationId, String previousSummary, int summarizedCount, List<ChatMessage> pending) {
+        if (pending.isEmpty() || !inFlight.add(conversationId)) {
+            return;
+        }
+        executor.execute(() -> {
+            try {
+                refresh(conversationId, previousSummary, summarizedCount, pending);
+            } catch (LoadShedException | CircuitOpenException e) {
+                log.debug("Postponed summary refresh for conversation {}: {}", conversationId, e.getMessage());
+            } catch (Exception e) {
+                log.error("Summary refresh failed for conversation " + conversationId, e);
+            } finally {
+                inFlight.remove(conversationId);
+            }
+        });
+    }
+
+    private void refresh(String conversationId, String previousSummary, int summarizedCount, List<ChatMessage> pending)
+            throws Exception {
+        String model = aiConfig.getContext().getSummaryModel();
+        String modelIdentifier = aiConfig.getModelIdentifier(model);
+        String apiKey = aiConfig.getApiKeyForModel(model);
+        if (modelIdentifier == null || !upstreamHttpClient.hasCredentials(model, apiKey)) {
+            return;
+        }
+
+        int budget = aiConfig.getContextBudget(model) / 2;
+        StringBuilder input = new StringBuilder();
+        input.append("Existing summary:\n").append(previousSummary != null ? previousSummary : "(none)").append("\n\nNew messages:\n");
+        int folded = 0;
+        for (ChatMessage m : pending) {
+            int cost = ContextAssembler.messageTokens(m);
+            if (folded > 0 && cost > budget) {
+                break;
+            }
+            budget -= cost;
+            input.append(m.isUser() ? "User: " : "Assistant (" + m.getAiModel() + "): ").append(m.getContent()).append('\n');
+            folded++;
+        }
+
+        ChatCompletionRequest completionRequest = new ChatCompletionRequest(modelIdentifier, List.of(
+                new ChatCompletionRequest.Message("system", SUMMARY_SYSTEM_PROMPT),
+                new ChatCompletionRequest.Message("user", input.toString())
+        ), false, null);
+
+        HttpRequest.Builder request = upstreamHttpClient.newRequest(model, apiKey)
+                .POST(upstreamCodec.encode(completionRequest));
+
+        String summary;
+        try (ConcurrencyLimiter.Permit permit = concurrencyLimiter.acquire(model, apiKey)) {
+            HttpResponse<InputStream> response = upstreamResilience.send(model, permit, request,
+                    HttpResponse.BodyHandlers.ofInputStream(), false);
+            try (InputStream body = response.body()) {
+                if (response.statusCode() != 200) {
+                    log.warn("Summary model returned HTTP {} for conversation {}", response.statusCode(), conversationId);
+                    return;
+                }
+                summary = upstreamCodec.decodeCompletion(body).content();
+            }
+        }
+        if (summary == null || summary.isBlank()) {
+            return;
+        }
+
+        int updated = conversationRepository.updateSummary(conversationId, summary.trim(), summarizedCount,
+                summarizedCount + folded);
+        log.debug("Folded {} messages into summary of conversation {} (applied={})", folded, conversationId, updated > 0);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+}
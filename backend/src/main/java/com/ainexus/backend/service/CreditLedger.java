@@ -0,0 +1,109 @@
+package com.ainexus.backend.service;
+
+import com.ainexus.backend.repository.UserRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.log4j.Log4j2;
+import org.springframework.stereotype.Service;
+
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Reserve, commit and refund of user credits. A reservation takes the credits up front with a
+ * single conditional {@code UPDATE ... WHERE credits >= n}, so concurrent requests (e.g. the
+ * parallel sends of a compare) cannot overdraw the balance and no entity is read or saved. Work
+ * that fails gives the credits back with {@link Reservation#refund}; work that succeeds keeps
+ * them with {@link Reservation#commit}. Either settles the reservation, and later calls are no-ops.
+ */
+@Log4j2
+@Service
+public class CreditLedger {
+
+    private final UserRepository userRepository;
+    private final UserCache userCache;
+
+    private final Counter reserved;
+    private final Counter committed;
+    private final Counter refunded;
+    private final Counter rejected;
+
+    public CreditLedger(UserRepository userRepository, UserCache userCache, MeterRegistry meterRegistry) {
+        this.userRepository = userRepository;
+        this.userCache = userCache;
+        this.reserved = credits(meterRegistry, "reserve");
+        this.committed = credits(meterRegistry, "commit");
+        this.refunded = credits(meterRegistry, "refund");
+        this.rejected = Counter.builder("chat.credits.rejected")
+                .description("Reservations refused for an insufficient balance")
+                .register(meterRegistry);
+    }
+
+    private static Counter credits(MeterRegistry meterRegistry, String operation) {
+        return Counter.builder("chat.credits").tag("operation", operation).register(meterRegistry);
+    }
+
+    /**
+     * Takes {@code amount} credits from the user, or throws if the balance does not cover them.
+     * An amount of 0 reserves nothing and always succeeds.
+     */
+    public Reservation reserve(String userEmail, int amount) {
+        if (amount <= 0) {
+            return new Reservation(userEmail, 0);
+        }
+        Optional<Integer> balance = userRepository.debitCredits(userEmail, amount);
+        if (balance.isEmpty()) {
+            rejected.increment();
+            throw new InsufficientCreditsException("Insufficient credits. Please upgrade or wait for a top-up!");
+        }
+        userCache.updateCredits(userEmail, balance.get());
+        reserved.increment(amount);
+        return new Reservation(userEmail, amount);
+    }
+
+    public final class Reservation {
+
+        private final String userEmail;
+        // Credits reserved and neither committed nor refunded yet
+        private final AtomicInteger open;
+
+        private Reservation(String userEmail, int amount) {
+            this.userEmail = userEmail;
+            this.open = new AtomicInteger(amount);
+        }
+
+        /** Keeps whatever is still reserved. */
+        public void commit() {
+            int amount = open.getAndSet(0);
+            if (amount > 0) {
+                committed.increment(amount);
+            }
+        }
+
+        /** Gives back everything still reserved. */
+        public void refund() {
+            refund(Integer.MAX_VALUE);
+        }
+
+        /** Gives back up to {@code amount} of the credits still reserved, e.g. for the failed models of a compare. */
+        public void refund(int amount) {
+            int current;
+            int returned;
+            do {
+                current = open.get();
+                returned = Math.min(current, amount);
+            } while (returned > 0 && !open.compareAndSet(current, current - returned));
+            if (returned <= 0) {
+                return;
+            }
+            try {
+                userRepository.addCredits(userEmail, returned)
+                        .ifPresent(balance -> userCache.updateCredits(userEmail, balance));
+                refunded.increment(returned);
+            } catch (RuntimeException e) {
+                // The user keeps paying for work that failed; logged so it can be corrected by hand
+                log.error("Failed to refund {} credits to {}", returned, userEmail, e);
+            }
+        }
+    }
+}
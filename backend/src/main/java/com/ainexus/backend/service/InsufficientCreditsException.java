@@ -0,0 +1,8 @@
+package com.ainexus.backend.service;
+
+public class InsufficientCreditsException extends RuntimeException {
+
+    public InsufficientCreditsException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,101 @@
+package com.ainexus.backend.service;
+
+import com.ainexus.backend.config.AIConfig;
+import com.ainexus.backend.upstream.ModelHealth;
+import com.ainexus.backend.upstream.UpstreamHttpClient;
+import com.ainexus.backend.upstream.UpstreamResilience;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.log4j.Log4j2;
+import org.springframework.stereotype.Service;
+
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Resolves the virtual model {@value #AUTO} to a concrete one: the candidate with the lowest
+ * decayed latency, penalised by its decayed error rate, among those whose circuit is not open
+ * and which satisfy the {@code openrouter.router} constraints. Latency is compared within the kind
+ * of call being routed, streamed or complete, as the two are measured differently.
+ */
+@Log4j2
+@Service
+public class ModelRouter {
+
+    public static final String AUTO = "auto";
+
+    private final AIConfig aiConfig;
+    private final UpstreamHttpClient upstreamHttpClient;
+    private final UpstreamResilience upstreamResilience;
+    private final MeterRegistry meterRegistry;
+
+    public ModelRouter(AIConfig aiConfig, UpstreamHttpClient upstreamHttpClient, UpstreamResilience upstreamResilience,
+                       MeterRegistry meterRegistry) {
+        this.aiConfig = aiConfig;
+        this.upstreamHttpClient = upstreamHttpClient;
+        this.upstreamResilience = upstreamResilience;
+        this.meterRegistry = meterRegistry;
+    }
+
+    /** Returns {@code requested} unchanged unless it is {@value #AUTO}. */
+    public String route(String requested, boolean streaming) {
+        if (!AUTO.equalsIgnoreCase(requested)) {
+            return requested;
+        }
+
+        AIConfig.Router settings = aiConfig.getRouter();
+        List<String> eligible = candidates(settings).stream()
+                .filter(model -> upstreamHttpClient.hasCredentials(model, aiConfig.getApiKeyForModel(model)))
+                .filter(model -> !settings.isFreeOnly() || isFree(model))
+                .toList();
+        if (eligible.isEmpty()) {
+            throw new RuntimeException("No model satisfies the auto routing constraints");
+        }
+
+        List<String> available = eligible.stream()
+                .filter(model -> upstreamResilience.health(model).getState() != ModelHealth.State.OPEN)
+                .filter(model -> withinLatencyCeiling(model, settings, streaming))
+                .toList();
+        // Better a slow or recovering model than none at all
+        List<String> pool = available.isEmpty() ? eligible : available;
+
+        String chosen = pool.stream()
+                .min(Comparator.comparingDouble(model -> score(model, settings, streaming)))
+                .orElseThrow();
+        log.debug("Routed auto request to {}", chosen);
+        Counter.builder("router.decisions").tag("model", chosen).register(meterRegistry).increment();
+        return chosen;
+    }
+
+    private Collection<String> candidates(AIConfig.Router settings) {
+        return settings.getCandidates().isEmpty() ? aiConfig.getModels().keySet() : settings.getCandidates();
+    }
+
+    private boolean isFree(String model) {
+        String identifier = aiConfig.getModelIdentifier(model);
+        return identifier != null && identifier.endsWith(":free");
+    }
+
+    private boolean withinLatencyCeiling(String model, AIConfig.Router settings, boolean streaming) {
+        if (settings.getMaxP95() == null) {
+            return true;
+        }
+        long p95 = upstreamResilience.health(model).percentile(0.95, streaming);
+        return p95 < 0 || p95 <= settings.getMaxP95().toMillis();
+    }
+
+    private double score(String model, AIConfig.Router settings, boolean streaming) {
+        ModelHealth health = upstreamResilience.health(model);
+        double errorRate = health.decayedErrorRate();
+        double latency = health.decayedLatencyMs(streaming);
+        if (latency < 0) {
+            latency = health.percentile(0.5, streaming);
+        }
+        if (latency < 0) {
+            // No samples at all: try it once, unless it has only ever failed
+            latency = errorRate > 0 ? aiConfig.getReadTimeout(model).toMillis() : 0;
+        }
+        return latency * (1 + settings.getErrorPenalty() * errorRate);
+    }
+}
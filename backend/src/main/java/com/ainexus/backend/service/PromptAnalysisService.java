@@ -1,36 +1,62 @@
 package com.ainexus.backend.service;
 
-import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.ainexus.backend.config.AIConfig;
 import com.ainexus.backend.model.PromptAnalysisResponse;
+import com.ainexus.backend.upstream.ChatCompletionRequest;
+import com.ainexus.backend.upstream.CircuitOpenException;
+import com.ainexus.backend.upstream.ConcurrencyLimiter;
+import com.ainexus.backend.upstream.LoadShedException;
+import com.ainexus.backend.upstream.UpstreamCodec;
+import com.ainexus.backend.upstream.UpstreamHttpClient;
+import com.ainexus.backend.upstream.UpstreamResilience;
 import lombok.extern.log4j.Log4j2;
 import org.springframework.stereotype.Service;
 
-import java.net.URI;
-import java.net.http.HttpClient;
+import java.io.InputStream;
 import java.net.http.HttpRequest;
 import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
 import java.time.Duration;
+import java.util.List;
 
 @Log4j2
 @Service
 public class PromptAnalysisService {
 
+    private static final String ANALYSIS_MODEL = "gemini";
+    // The real-time quality meter falls back to a heuristic, so keep this tighter than chat
+    private static final Duration ANALYSIS_TIMEOUT = Duration.ofSeconds(15);
+
     private final AIConfig aiConfig;
+    private final UpstreamHttpClient upstreamHttpClient;
+    private final UpstreamCodec upstreamCodec;
+    private final ConcurrencyLimiter concurrencyLimiter;
+    private final UpstreamResilience upstreamResilience;
     private static final ObjectMapper mapper = new ObjectMapper();
 
-    public PromptAnalysisService(AIConfig aiConfig) {
+    public PromptAnalysisService(AIConfig aiConfig, UpstreamHttpClient upstreamHttpClient, UpstreamCodec upstreamCodec,
+                                 ConcurrencyLimiter concurrencyLimiter, UpstreamResilience upstreamResilience) {
         this.aiConfig = aiConfig;
+        this.upstreamHttpClient = upstreamHttpClient;
+        this.upstreamCodec = upstreamCodec;
+        this.concurrencyLimiter = concurrencyLimiter;
+        this.upstreamResilience = upstreamResilience;
     }
 
+    /**
+     * Never throws: when the model cannot be used, including when it is shedding load or its
+     * circuit is open, the heuristic score is returned, marked as a fallback.
+     */
     public PromptAnalysisResponse analyzePrompt(String prompt) {
         try {
-            String modelIdentifier = aiConfig.getModelIdentifier("gemini");
-            String apiKey = aiConfig.getApiKeyForModel("gemini");
+            String modelIdentifier = aiConfig.getModelIdentifier(ANALYSIS_MODEL);
+            String apiKey = aiConfig.getApiKeyForModel(ANALYSIS_MODEL);
 
-            if (modelIdentifier == null || apiKey == null) {
-                return new PromptAnalysisResponse(5, "Missing AI configuration.", prompt, false);
+            if (modelIdentifier == null || !upstreamHttpClient.hasCredentials(ANALYSIS_MODEL, apiKey)) {
+                PromptAnalysisResponse missing = new PromptAnalysisResponse(5, "Missing AI configuration.", prompt, false);
+                missing.setFallback(true);
+                return missing;
             }
 
             String systemPrompt = "You are an expert Prompt Engineer. Analyze the user's prompt. " +
@@ -39,35 +65,30 @@ public class PromptAnalysisService {
                     "'optimizedPrompt' (string, rewrite the prompt to be professional, clear and detailed), " +
                     "'canImprove' (boolean).";
 
-            String jsonRequest = String.format("""
-                {
-                  "model": "%s",
-                  "messages": [
-                    {"role": "system", "content": "%s"},
-                    {"role": "user", "content": "%s"}
-                  ],
-                  "response_format": { "type": "json_object" }
+            ChatCompletionRequest completionRequest = new ChatCompletionRequest(modelIdentifier, List.of(
+                    new ChatCompletionRequest.Message("system", systemPrompt),
+                    new ChatCompletionRequest.Message("user", prompt)
+            ), false, "json_object");
+
+            HttpRequest.Builder request = upstreamHttpClient.newRequest(ANALYSIS_MODEL, apiKey)
+                    .POST(upstreamCodec.encode(completionRequest));
+
+            String aiJson;
+            try (ConcurrencyLimiter.Permit permit = concurrencyLimiter.acquire(ANALYSIS_MODEL, apiKey)) {
+                HttpResponse<InputStream> response = upstreamResilience.send(ANALYSIS_MODEL, permit, request,
+                        HttpResponse.BodyHandlers.ofInputStream(), false, ANALYSIS_TIMEOUT);
+                try (InputStream body = response.body()) {
+                    if (response.statusCode() != 200) {
+                        log.error("Prompt analysis API error: {}", new String(body.readAllBytes(), StandardCharsets.UTF_8));
+                        return calculateHeuristicScore(prompt);
+                    }
+                    aiJson = upstreamCodec.decodeCompletion(body).content();
                 }
-                """, modelIdentifier, systemPrompt.replace("\"", "\\\""), prompt.replace("\"", "\\\"").replace("\n", "\\n"));
-
-            HttpRequest request = HttpRequest.newBuilder()
-                    .uri(URI.create(aiConfig.getEndpoint()))
-                    .header("Authorization", "Bearer " + apiKey)
-                    .header("Content-Type", "application/json")
-                    .POST(HttpRequest.BodyPublishers.ofString(jsonRequest))
-                    .timeout(Duration.ofSeconds(15))
-                    .build();
-
-            HttpResponse<String> response = HttpClient.newHttpClient().send(request, HttpResponse.BodyHandlers.ofString());
-
-            if (response.statusCode() != 200) {
-                log.error("Prompt analysis API error: {}", response.body());
+            }
+            if (aiJson == null) {
                 return calculateHeuristicScore(prompt);
             }
 
-            JsonNode root = mapper.readTree(response.body());
-            String aiJson = root.path("choices").get(0).path("message").path("content").asText();
-            
             // Handle some LLMs that wrap JSON in backticks
             if (aiJson.contains("```json")) {
                 aiJson = aiJson.substring(aiJson.indexOf("```json") + 7);
@@ -79,6 +100,9 @@ public class PromptAnalysisService {
 
             return mapper.readValue(aiJson, PromptAnalysisResponse.class);
 
+        } catch (LoadShedException | CircuitOpenException e) {
+            log.debug("Prompt analysis fell back to the heuristic: {}", e.getMessage());
+            return calculateHeuristicScore(prompt);
         } catch (Exception e) {
             log.error("Error in prompt analysis service", e);
             return calculateHeuristicScore(prompt);
@@ -93,11 +117,13 @@ public class PromptAnalysisService {
         
         score = Math.min(10, score);
         
-        return new PromptAnalysisResponse(
+        PromptAnalysisResponse response = new PromptAnalysisResponse(
             score, 
             "Score based on length and structure (Fallback).", 
             prompt, 
             score < 8
         );
+        response.setFallback(true);
+        return response;
     }
 }
@@ -0,0 +1,141 @@
+package com.ainexus.backend.service;
+
+import com.ainexus.backend.config.AIConfig;
+import com.ainexus.backend.model.ChatMessage;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.stereotype.Service;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Base64;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+/**
+ * Opt-in exact-match cache of completions, keyed on a SHA-256 of the model identifier, the
+ * expert-advice flag and the whitespace-normalised context actually sent upstream. Bounded by
+ * entry count, total bytes and TTL; values can be kept in direct buffers to stay off the heap.
+ */
+@Service
+public class ResponseCache {
+
+    private static final Pattern WHITESPACE = Pattern.compile("\\s+");
+
+    private record Entry(ByteBuffer value, long expiresAt) {
+    }
+
+    private final AIConfig.ResponseCache settings;
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(256, 0.75f, true);
+    private long residentBytes;
+
+    private final Counter hits;
+    private final Counter misses;
+
+    public ResponseCache(AIConfig aiConfig, MeterRegistry meterRegistry) {
+        this.settings = aiConfig.getResponseCache();
+        this.hits = Counter.builder("response.cache.hits").register(meterRegistry);
+        this.misses = Counter.builder("response.cache.misses").register(meterRegistry);
+        Gauge.builder("response.cache.resident.bytes", this, c -> c.residentBytes())
+                .tag("offHeap", String.valueOf(settings.isOffHeap()))
+                .register(meterRegistry);
+        Gauge.builder("response.cache.entries", this, c -> c.size()).register(meterRegistry);
+    }
+
+    public boolean isEnabled() {
+        return settings.isEnabled();
+    }
+
+    public String key(String modelIdentifier, boolean isExpertAdvice, String summary, List<ChatMessage> window) {
+        MessageDigest digest = sha256();
+        update(digest, modelIdentifier);
+        update(digest, isExpertAdvice ? "expert" : "standard");
+        update(digest, summary != null ? normalize(summary) : "");
+        for (ChatMessage m : window) {
+            update(digest, m.isUser() ? "user" : "assistant");
+            update(digest, normalize(m.getContent()));
+        }
+        return Base64.getEncoder().encodeToString(digest.digest());
+    }
+
+    public String get(String key) {
+        ByteBuffer value;
+        synchronized (this) {
+            Entry entry = entries.get(key);
+            if (entry != null && entry.expiresAt() < System.currentTimeMillis()) {
+                remove(key);
+                entry = null;
+            }
+            if (entry == null) {
+                misses.increment();
+                return null;
+            }
+            value = entry.value().duplicate();
+        }
+        hits.increment();
+        byte[] bytes = new byte[value.remaining()];
+        value.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    public void put(String key, String content) {
+        byte[] bytes = content.getBytes(StandardCharsets.UTF_8);
+        if (bytes.length > settings.getMaxSize().toBytes()) {
+            return;
+        }
+        ByteBuffer value = settings.isOffHeap() ? ByteBuffer.allocateDirect(bytes.length) : ByteBuffer.allocate(bytes.length);
+        value.put(bytes).flip();
+        Entry entry = new Entry(value.asReadOnlyBuffer(), System.currentTimeMillis() + settings.getTtl().toMillis());
+
+        synchronized (this) {
+            remove(key);
+            entries.put(key, entry);
+            residentBytes += bytes.length;
+
+            Iterator<Map.Entry<String, Entry>> eldest = entries.entrySet().iterator();
+            while ((entries.size() > settings.getMaxEntries() || residentBytes > settings.getMaxSize().toBytes())
+                    && eldest.hasNext()) {
+                residentBytes -= eldest.next().getValue().value().capacity();
+                eldest.remove();
+            }
+        }
+    }
+
+    public synchronized long residentBytes() {
+        return residentBytes;
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    private void remove(String key) {
+        Entry removed = entries.remove(key);
+        if (removed != null) {
+            residentBytes -= removed.value().capacity();
+        }
+    }
+
+    private static String normalize(String text) {
+        return WHITESPACE.matcher(text.strip()).replaceAll(" ");
+    }
+
+    private static void update(MessageDigest digest, String part) {
+        digest.update(part.getBytes(StandardCharsets.UTF_8));
+        digest.update((byte) 0);
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+}
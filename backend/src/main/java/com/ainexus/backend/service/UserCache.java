@@ -0,0 +1,118 @@
+package com.ainexus.backend.service;
+
+import com.ainexus.backend.config.PersistenceConfig;
+import com.ainexus.backend.model.User;
+import com.ainexus.backend.repository.UserRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.stereotype.Service;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Snapshots of users by email, so the request path resolves the principal without querying
+ * {@code users}. Bounded to {@code persistence.user-cache.max-entries}, least recently used
+ * first, and each snapshot expires after {@code ttl}, which bounds how long a change made by
+ * another instance goes unnoticed. Changes made here are applied right away: signups and
+ * upgrades invalidate the user, and {@link CreditLedger} records each new balance.
+ * <p>
+ * The credit balance is a view for display; reservations are always checked by the database.
+ */
+@Service
+public class UserCache {
+
+    public record Snapshot(Long id, String email, String fullName, boolean premium, int credits) {
+
+        static Snapshot of(User user) {
+            return new Snapshot(user.getId(), user.getEmail(), user.getFullName(), user.isPremium(), user.getCredits());
+        }
+
+        Snapshot withCredits(int balance) {
+            return new Snapshot(id, email, fullName, premium, balance);
+        }
+    }
+
+    private record Entry(Snapshot snapshot, long loadedAt) {
+    }
+
+    private final UserRepository userRepository;
+    private final PersistenceConfig.UserCache settings;
+
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    // Bumped by every invalidation, so a load that raced with one does not cache what it read
+    private long generation;
+
+    private final Counter hits;
+    private final Counter misses;
+
+    public UserCache(UserRepository userRepository, PersistenceConfig persistenceConfig, MeterRegistry meterRegistry) {
+        this.userRepository = userRepository;
+        this.settings = persistenceConfig.getUserCache();
+
+        this.hits = Counter.builder("user.cache.hits").register(meterRegistry);
+        this.misses = Counter.builder("user.cache.misses").register(meterRegistry);
+        Gauge.builder("user.cache.entries", this, c -> c.size()).register(meterRegistry);
+    }
+
+    public Optional<Snapshot> get(String email) {
+        if (email == null) {
+            return Optional.empty();
+        }
+        if (!settings.isEnabled()) {
+            return userRepository.findByEmail(email).map(Snapshot::of);
+        }
+
+        long loadGeneration;
+        synchronized (this) {
+            Entry entry = entries.get(email);
+            if (entry != null && System.nanoTime() - entry.loadedAt() < settings.getTtl().toNanos()) {
+                hits.increment();
+                return Optional.of(entry.snapshot());
+            }
+            loadGeneration = generation;
+        }
+
+        misses.increment();
+        Optional<Snapshot> snapshot = userRepository.findByEmail(email).map(Snapshot::of);
+        // Unknown emails are not cached; the next request looks again
+        snapshot.ifPresent(s -> put(email, s, loadGeneration));
+        return snapshot;
+    }
+
+    /** Like {@link #get}, for principals that must exist. */
+    public Snapshot require(String email) {
+        return get(email).orElseThrow(() -> new RuntimeException("User not found"));
+    }
+
+    public synchronized void invalidate(String email) {
+        generation++;
+        entries.remove(email);
+    }
+
+    /**
+     * Records the balance the database reported after a credit change. A snapshot loaded
+     * concurrently may still show the previous balance until it expires, which a display value
+     * can afford, so unlike {@link #invalidate} this does not hold back loads in flight.
+     */
+    public synchronized void updateCredits(String email, int balance) {
+        entries.computeIfPresent(email, (key, entry) -> new Entry(entry.snapshot().withCredits(balance), entry.loadedAt()));
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    private synchronized void put(String email, Snapshot snapshot, long loadGeneration) {
+        if (generation != loadGeneration) {
+            return;
+        }
+        entries.put(email, new Entry(snapshot, System.nanoTime()));
+        if (entries.size() > settings.getMaxEntries()) {
+            Map.Entry<String, Entry> eldest = entries.entrySet().iterator().next();
+            entries.remove(eldest.getKey());
+        }
+    }
+}
@@ -0,0 +1,14 @@
+package com.ainexus.backend.upstream;
+
+import java.util.List;
+
+/**
+ * Minimal view of an OpenRouter chat-completions request, encoded by {@link UpstreamCodec}.
+ *
+ * @param responseFormat optional {@code response_format.type}, e.g. {@code json_object}
+ */
+public record ChatCompletionRequest(String model, List<Message> messages, boolean stream, String responseFormat) {
+
+    public record Message(String role, String content) {
+    }
+}
@@ -0,0 +1,16 @@
+package com.ainexus.backend.upstream;
+
+public class CircuitOpenException extends RuntimeException {
+
+    private final long retryAfterMs;
+
+    public CircuitOpenException(String model, long retryAfterMs) {
+        super(model + " is temporarily unavailable after repeated failures; retry in "
+                + Math.max(1, retryAfterMs / 1000) + "s");
+        this.retryAfterMs = retryAfterMs;
+    }
+
+    public long getRetryAfterMs() {
+        return retryAfterMs;
+    }
+}
@@ -0,0 +1,154 @@
+package com.ainexus.backend.upstream;
+
+import com.ainexus.backend.config.AIConfig;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Adaptive limit on concurrent upstream calls per model and API key.
+ * <p>
+ * The limit grows additively while latency is stable and shrinks multiplicatively on 429s,
+ * timeouts and 5xx, or when short-term latency rises well above the long-term average (a sign
+ * that requests are queueing upstream). Completion length makes single LLM latencies too noisy
+ * to compare against a minimum RTT, hence the two moving averages instead of classic Vegas.
+ * Callers over the limit wait in a small bounded queue; beyond that they are shed immediately.
+ */
+@Component
+public class ConcurrencyLimiter {
+
+    private final AIConfig.Limiter settings;
+    private final MeterRegistry meterRegistry;
+    private final Map<String, AdaptiveLimit> limits = new ConcurrentHashMap<>();
+    private final Counter shed;
+
+    public ConcurrencyLimiter(AIConfig aiConfig, MeterRegistry meterRegistry) {
+        this.settings = aiConfig.getLimiter();
+        this.meterRegistry = meterRegistry;
+        this.shed = Counter.builder("upstream.limiter.shed").register(meterRegistry);
+    }
+
+    /**
+     * Waits up to {@code max-wait} for a slot. Close the returned permit when the upstream call
+     * (including any streamed body) has finished.
+     *
+     * @throws LoadShedException if the wait queue is full or the wait times out
+     */
+    public Permit acquire(String model, String apiKey) throws InterruptedException {
+        if (!settings.isEnabled()) {
+            return new Permit(null);
+        }
+        // Keys share upstream rate limits, so partition by key as well; never expose the key itself
+        String id = model + ":" + Integer.toHexString(apiKey != null ? apiKey.hashCode() : 0);
+        return limits.computeIfAbsent(id, k -> new AdaptiveLimit(model, k)).acquire();
+    }
+
+    public final class Permit implements AutoCloseable {
+        private final AdaptiveLimit owner;
+        private long rttMs = -1;
+        private boolean dropped;
+        private boolean closed;
+
+        private Permit(AdaptiveLimit owner) {
+            this.owner = owner;
+        }
+
+        /** Records the call's latency to first response, and whether upstream signalled overload. */
+        public void record(long rttMs, boolean dropped) {
+            this.rttMs = rttMs;
+            this.dropped = dropped;
+        }
+
+        @Override
+        public void close() {
+            if (owner != null && !closed) {
+                closed = true;
+                owner.release(rttMs, dropped);
+            }
+        }
+    }
+
+    private final class AdaptiveLimit {
+        private static final double SHORT_ALPHA = 0.2;
+        private static final double LONG_ALPHA = 0.02;
+
+        private final String model;
+        private final ReentrantLock lock = new ReentrantLock();
+        private final Condition available = lock.newCondition();
+
+        private double limit = settings.getInitialLimit();
+        private int inFlight;
+        private int waiting;
+        private double shortRtt;
+        private double longRtt;
+
+        AdaptiveLimit(String model, String id) {
+            this.model = model;
+            Gauge.builder("upstream.limiter.limit", this, l -> l.limit).tag("limiter", id).register(meterRegistry);
+            Gauge.builder("upstream.limiter.inflight", this, l -> l.inFlight).tag("limiter", id).register(meterRegistry);
+            Gauge.builder("upstream.limiter.queued", this, l -> l.waiting).tag("limiter", id).register(meterRegistry);
+        }
+
+        Permit acquire() throws InterruptedException {
+            lock.lock();
+            try {
+                if (inFlight >= (int) limit) {
+                    if (waiting >= settings.getMaxQueue()) {
+                        throw shed();
+                    }
+                    waiting++;
+                    try {
+                        long nanos = TimeUnit.MILLISECONDS.toNanos(settings.getMaxWait().toMillis());
+                        while (inFlight >= (int) limit) {
+                            if (nanos <= 0) {
+                                throw shed();
+                            }
+                            nanos = available.awaitNanos(nanos);
+                        }
+                    } finally {
+                        waiting--;
+                    }
+                }
+                inFlight++;
+                return new Permit(this);
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        void release(long rttMs, boolean dropped) {
+            lock.lock();
+            try {
+                inFlight--;
+                if (dropped) {
+                    limit = Math.max(settings.getMinLimit(), limit * settings.getBackoffRatio());
+                } else if (rttMs >= 0) {
+                    shortRtt = shortRtt == 0 ? rttMs : shortRtt + SHORT_ALPHA * (rttMs - shortRtt);
+                    longRtt = longRtt == 0 ? rttMs : longRtt + LONG_ALPHA * (rttMs - longRtt);
+                    if (shortRtt > longRtt * settings.getLatencyTolerance()) {
+                        limit = Math.max(settings.getMinLimit(), limit * settings.getBackoffRatio());
+                    } else if (inFlight + 1 >= limit / 2) {
+                        // Only grow while the limit is actually being used
+                        limit = Math.min(settings.getMaxLimit(), limit + 1.0 / limit);
+                    }
+                }
+                available.signalAll();
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        private LoadShedException shed() {
+            shed.increment();
+            long retryAfter = Math.max(1, (long) Math.ceil(longRtt / 1000.0));
+            return new LoadShedException(model, retryAfter);
+        }
+    }
+}
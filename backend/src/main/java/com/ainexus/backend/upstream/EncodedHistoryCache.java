@@ -0,0 +1,173 @@
+package com.ainexus.backend.upstream;
+
+import com.ainexus.backend.config.AIConfig;
+import com.ainexus.backend.model.ChatMessage;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.log4j.Log4j2;
+import org.springframework.stereotype.Component;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Keeps the already encoded JSON message history per conversation so each upstream call only
+ * encodes the turns added since the previous one. Messages are encoded one by one and their
+ * offsets recorded, so a context window that has slid forward (see {@code ContextAssembler})
+ * reuses the cached run from its first message on. Entries are evicted least-recently-used once
+ * the total encoded size exceeds {@code openrouter.history-cache.max-size}.
+ */
+@Log4j2
+@Component
+public class EncodedHistoryCache {
+
+    // Message i of ids starts at starts[i] in encoded; consecutive messages are separated by a comma
+    private record Entry(byte[] encoded, String[] ids, int[] starts) {
+
+        int end(int index) {
+            return index + 1 < ids.length ? starts[index + 1] - 1 : encoded.length;
+        }
+    }
+
+    private final UpstreamCodec upstreamCodec;
+    private final AIConfig.HistoryCache settings;
+
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long residentBytes;
+
+    private final Counter hits;
+    private final Counter misses;
+
+    public EncodedHistoryCache(UpstreamCodec upstreamCodec, AIConfig aiConfig, MeterRegistry meterRegistry) {
+        this.upstreamCodec = upstreamCodec;
+        this.settings = aiConfig.getHistoryCache();
+
+        this.hits = Counter.builder("history.cache.hits").register(meterRegistry);
+        this.misses = Counter.builder("history.cache.misses").register(meterRegistry);
+        Gauge.builder("history.cache.hit.rate", this, c -> c.hitRate()).register(meterRegistry);
+        Gauge.builder("history.cache.resident.bytes", this, c -> c.residentBytes()).register(meterRegistry);
+        Gauge.builder("history.cache.entries", this, c -> c.size()).register(meterRegistry);
+    }
+
+    /**
+     * Returns the encoded fragment for {@code history}, reusing the cached encodings of the
+     * messages it shares with the last call, starting at its first message.
+     */
+    public byte[] encode(String conversationId, List<ChatMessage> history) throws IOException {
+        if (!settings.isEnabled() || conversationId == null) {
+            return upstreamCodec.encodeMessages(toUpstream(history, 0));
+        }
+
+        Entry cached;
+        synchronized (this) {
+            cached = entries.get(conversationId);
+        }
+
+        int from = cached != null && !history.isEmpty() ? indexOf(cached.ids(), history.get(0).getId()) : -1;
+        int reused = from >= 0 ? sharedRun(cached, from, history) : 0;
+        ByteArrayOutputStream out;
+        String[] ids = new String[history.size()];
+        int[] starts = new int[history.size()];
+        if (reused > 0) {
+            hits.increment();
+            int base = cached.starts()[from];
+            int length = cached.end(from + reused - 1) - base;
+            if (reused == history.size() && from == 0 && length == cached.encoded().length) {
+                return cached.encoded();
+            }
+            out = new ByteArrayOutputStream(length + 1024);
+            out.write(cached.encoded(), base, length);
+            for (int i = 0; i < reused; i++) {
+                ids[i] = history.get(i).getId();
+                starts[i] = cached.starts()[from + i] - base;
+            }
+        } else {
+            misses.increment();
+            out = new ByteArrayOutputStream(4096);
+        }
+        for (int i = reused; i < history.size(); i++) {
+            if (i > 0) {
+                out.write(',');
+            }
+            ids[i] = history.get(i).getId();
+            starts[i] = out.size();
+            out.write(upstreamCodec.encodeMessages(toUpstream(history.subList(i, i + 1), 0)));
+        }
+
+        byte[] encoded = out.toByteArray();
+        if (!history.isEmpty()) {
+            put(conversationId, new Entry(encoded, ids, starts));
+        }
+        return encoded;
+    }
+
+    public synchronized void invalidate(String conversationId) {
+        Entry removed = entries.remove(conversationId);
+        if (removed != null) {
+            residentBytes -= removed.encoded().length;
+        }
+    }
+
+    public synchronized long residentBytes() {
+        return residentBytes;
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    public double hitRate() {
+        double total = hits.count() + misses.count();
+        return total > 0 ? hits.count() / total : 0;
+    }
+
+    private synchronized void put(String conversationId, Entry entry) {
+        if (entry.encoded().length > settings.getMaxSize().toBytes()) {
+            invalidate(conversationId);
+            return;
+        }
+        Entry previous = entries.put(conversationId, entry);
+        residentBytes += entry.encoded().length - (previous != null ? previous.encoded().length : 0);
+
+        Iterator<Map.Entry<String, Entry>> eldest = entries.entrySet().iterator();
+        while (residentBytes > settings.getMaxSize().toBytes() && eldest.hasNext()) {
+            Map.Entry<String, Entry> evicted = eldest.next();
+            residentBytes -= evicted.getValue().encoded().length;
+            eldest.remove();
+            log.debug("Evicted encoded history for conversation {}", evicted.getKey());
+        }
+    }
+
+    // How many leading messages of history the cache holds in the same order, starting at index from
+    private static int sharedRun(Entry cached, int from, List<ChatMessage> history) {
+        int run = 0;
+        while (from + run < cached.ids().length && run < history.size()
+                && cached.ids()[from + run].equals(history.get(run).getId())) {
+            run++;
+        }
+        return run;
+    }
+
+    private static int indexOf(String[] ids, String id) {
+        for (int i = 0; i < ids.length; i++) {
+            if (ids[i].equals(id)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static List<ChatCompletionRequest.Message> toUpstream(List<ChatMessage> history, int from) {
+        List<ChatCompletionRequest.Message> messages = new ArrayList<>(history.size() - from);
+        for (ChatMessage m : history.subList(from, history.size())) {
+            messages.add(new ChatCompletionRequest.Message(m.isUser() ? "user" : "assistant", m.getContent()));
+        }
+        return messages;
+    }
+}
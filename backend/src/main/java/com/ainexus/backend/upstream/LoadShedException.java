@@ -0,0 +1,15 @@
+package com.ainexus.backend.upstream;
+
+public class LoadShedException extends RuntimeException {
+
+    private final long retryAfterSeconds;
+
+    public LoadShedException(String model, long retryAfterSeconds) {
+        super("Too many concurrent requests for " + model + "; retry in " + retryAfterSeconds + "s");
+        this.retryAfterSeconds = retryAfterSeconds;
+    }
+
+    public long getRetryAfterSeconds() {
+        return retryAfterSeconds;
+    }
+}
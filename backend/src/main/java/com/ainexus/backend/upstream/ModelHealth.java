@@ -0,0 +1,200 @@
+package com.ainexus.backend.upstream;
+
+import com.ainexus.backend.config.AIConfig;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Per-model latency windows and circuit breaker. The breaker opens after
+ * {@code failureThreshold} consecutive failures, rejects calls for {@code openDuration}, then
+ * lets a single probe through; the probe's outcome closes or re-opens it.
+ * <p>
+ * Latency is the time to response headers, which means different things per kind of call: a
+ * streamed response starts with the first token, a complete one only once the whole reply is
+ * generated. Each kind therefore has its own window, used for its own timeouts and hedging.
+ * <p>
+ * Alongside the windows it keeps time-decayed latency and error averages (half-life
+ * {@code statsHalfLife}) so that routing follows recent behaviour rather than the whole window.
+ */
+public class ModelHealth {
+
+    public enum State { CLOSED, OPEN, HALF_OPEN }
+
+    private static final int WINDOW = 256;
+
+    private static final class Window {
+        final long[] samples = new long[WINDOW];
+        int count;
+        int next;
+        // Exponentially decayed sum; the average is sum / weight
+        double latencySum;
+        double latencyWeight;
+
+        void record(long latencyMs) {
+            samples[next] = latencyMs;
+            next = (next + 1) % WINDOW;
+            count = Math.min(count + 1, WINDOW);
+        }
+
+        void decay(double factor) {
+            latencySum *= factor;
+            latencyWeight *= factor;
+        }
+    }
+
+    private final AIConfig.Resilience settings;
+    private final Window streamed = new Window();
+    private final Window complete = new Window();
+
+    private State state = State.CLOSED;
+    private int consecutiveFailures;
+    private long openedAt;
+    private boolean probeInFlight;
+
+    // Exponentially decayed sums; the error rate is errorSum / outcomeWeight
+    private double errorSum;
+    private double outcomeWeight;
+    private long decayedAt = System.currentTimeMillis();
+
+    public ModelHealth(AIConfig.Resilience settings) {
+        this.settings = settings;
+    }
+
+    public synchronized boolean tryAcquire() {
+        if (state == State.OPEN) {
+            if (System.currentTimeMillis() - openedAt < settings.getOpenDuration().toMillis()) {
+                return false;
+            }
+            state = State.HALF_OPEN;
+            probeInFlight = false;
+        }
+        if (state == State.HALF_OPEN) {
+            if (probeInFlight) {
+                return false;
+            }
+            probeInFlight = true;
+        }
+        return true;
+    }
+
+    public synchronized void onSuccess(long latencyMs, boolean streamedCall) {
+        Window window = window(streamedCall);
+        window.record(latencyMs);
+        observe(window, latencyMs, false);
+        consecutiveFailures = 0;
+        probeInFlight = false;
+        state = State.CLOSED;
+    }
+
+    /**
+     * @param latencyMs elapsed time if the call timed out (recorded as a censored sample so
+     *                  timeouts cannot shrink the window they are derived from), otherwise negative
+     */
+    public synchronized void onFailure(long latencyMs, boolean streamedCall) {
+        Window window = window(streamedCall);
+        if (latencyMs >= 0) {
+            window.record(latencyMs);
+        }
+        observe(window, latencyMs, true);
+        consecutiveFailures++;
+        probeInFlight = false;
+        if (state == State.HALF_OPEN || consecutiveFailures >= settings.getFailureThreshold()) {
+            state = State.OPEN;
+            openedAt = System.currentTimeMillis();
+        }
+    }
+
+    /** Ends a call without an outcome, freeing the half-open probe slot. */
+    public synchronized void release() {
+        probeInFlight = false;
+    }
+
+    public synchronized void seed(List<Long> latencies, boolean streamedCalls) {
+        Window window = window(streamedCalls);
+        latencies.forEach(window::record);
+        // Stored samples are of unknown age; give them the weight of a single observation, and
+        // none at all once live calls have been observed
+        if (!latencies.isEmpty() && window.latencyWeight == 0) {
+            window.latencySum = latencies.stream().mapToLong(Long::longValue).average().orElse(0);
+            window.latencyWeight = 1;
+        }
+    }
+
+    /** Time-decayed mean latency of the kind of call, or -1 if nothing has been observed. */
+    public synchronized double decayedLatencyMs(boolean streamedCalls) {
+        Window window = window(streamedCalls);
+        return window.latencyWeight > 0 ? window.latencySum / window.latencyWeight : -1;
+    }
+
+    /** Time-decayed error rate; fades back towards zero while the model sees no traffic. */
+    public synchronized double decayedErrorRate() {
+        decay();
+        // One phantom success keeps a lone stale failure from pinning the rate at 100%
+        return errorSum / (outcomeWeight + 1);
+    }
+
+    public synchronized State getState() {
+        return state;
+    }
+
+    public synchronized long retryAfterMs() {
+        return state == State.OPEN
+                ? Math.max(0, settings.getOpenDuration().toMillis() - (System.currentTimeMillis() - openedAt))
+                : 0;
+    }
+
+    /** Latency percentile over the kind of call's window, or -1 while it has fewer than minSamples. */
+    public synchronized long percentile(double p, boolean streamedCalls) {
+        Window window = window(streamedCalls);
+        if (window.count < settings.getMinSamples()) {
+            return -1;
+        }
+        long[] sorted = Arrays.copyOf(window.samples, window.count);
+        Arrays.sort(sorted);
+        int index = (int) Math.ceil(p * sorted.length) - 1;
+        return sorted[Math.max(0, Math.min(index, sorted.length - 1))];
+    }
+
+    public Duration timeout(Duration ceiling, boolean streamedCall) {
+        if (!settings.isAdaptiveTimeout()) {
+            return ceiling;
+        }
+        long p99 = percentile(0.99, streamedCall);
+        if (p99 < 0) {
+            return ceiling;
+        }
+        long adaptive = (long) (p99 * settings.getTimeoutMultiplier());
+        long bounded = Math.max(settings.getMinTimeout().toMillis(), Math.min(adaptive, ceiling.toMillis()));
+        return Duration.ofMillis(bounded);
+    }
+
+    public boolean isHedgingEnabled() {
+        return settings.isHedge();
+    }
+
+    private Window window(boolean streamedCalls) {
+        return streamedCalls ? streamed : complete;
+    }
+
+    private void observe(Window window, long latencyMs, boolean error) {
+        decay();
+        if (latencyMs >= 0) {
+            window.latencySum += latencyMs;
+            window.latencyWeight += 1;
+        }
+        errorSum += error ? 1 : 0;
+        outcomeWeight += 1;
+    }
+
+    private void decay() {
+        long now = System.currentTimeMillis();
+        double factor = Math.pow(0.5, (now - decayedAt) / (double) settings.getStatsHalfLife().toMillis());
+        streamed.decay(factor);
+        complete.decay(factor);
+        errorSum *= factor;
+        outcomeWeight *= factor;
+        decayedAt = now;
+    }
+}
@@ -0,0 +1,137 @@
+package com.ainexus.backend.upstream;
+
+import com.ainexus.backend.config.AIConfig;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.log4j.Log4j2;
+import org.springframework.stereotype.Component;
+
+import javax.net.ssl.SSLSession;
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * OpenRouter over a managed HTTP/2 client. Connections (and their TLS sessions) are pooled and
+ * reused across requests instead of building a fresh client, selector thread and handshake per call.
+ */
+@Log4j2
+@Component
+public class OpenRouterProvider implements UpstreamProvider {
+
+    public static final String NAME = "openrouter";
+
+    private static final int MAX_TRACKED_SESSIONS = 1024;
+
+    private final AIConfig aiConfig;
+    private final ExecutorService executor;
+
+    // One client per distinct connect timeout; normally there is exactly one
+    private final Map<Duration, HttpClient> clients = new ConcurrentHashMap<>();
+
+    private final Set<String> seenSessions = Collections.synchronizedSet(Collections.newSetFromMap(
+            new LinkedHashMap<>() {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, Boolean> eldest) {
+                    return size() > MAX_TRACKED_SESSIONS;
+                }
+            }));
+
+    private final Counter handshakes;
+    private final Counter reusedConnections;
+
+    public OpenRouterProvider(AIConfig aiConfig, MeterRegistry meterRegistry) {
+        this.aiConfig = aiConfig;
+        this.executor = "platform".equalsIgnoreCase(aiConfig.getHttp().getExecutor())
+                ? Executors.newFixedThreadPool(aiConfig.getHttp().getPlatformThreads())
+                : Executors.newVirtualThreadPerTaskExecutor();
+
+        this.handshakes = Counter.builder("upstream.tls.handshakes")
+                .description("New TLS sessions observed on upstream connections")
+                .register(meterRegistry);
+        this.reusedConnections = Counter.builder("upstream.connections.reused")
+                .description("Upstream responses served over an already established TLS session")
+                .register(meterRegistry);
+        meterRegistry.gauge("upstream.clients", clients, Map::size);
+    }
+
+    @Override
+    public String name() {
+        return NAME;
+    }
+
+    @Override
+    public HttpRequest.Builder newRequest(String model, String apiKey) {
+        return HttpRequest.newBuilder()
+                .uri(URI.create(aiConfig.getEndpoint()))
+                .header("Authorization", "Bearer " + apiKey)
+                .header("Content-Type", "application/json")
+                .header("HTTP-Referer", "http://localhost:5173")
+                .header("X-Title", "AI Nexus")
+                .timeout(aiConfig.getReadTimeout(model));
+    }
+
+    @Override
+    public <T> HttpResponse<T> send(String model, HttpRequest request, HttpResponse.BodyHandler<T> handler)
+            throws IOException, InterruptedException {
+        HttpResponse<T> response = clientFor(model).send(request, handler);
+        recordSession(response);
+        return response;
+    }
+
+    @Override
+    public <T> CompletableFuture<HttpResponse<T>> sendAsync(String model, HttpRequest request,
+                                                            HttpResponse.BodyHandler<T> handler) {
+        return clientFor(model).sendAsync(request, handler).whenComplete((response, error) -> {
+            if (response != null) {
+                recordSession(response);
+            }
+        });
+    }
+
+    private HttpClient clientFor(String model) {
+        return clients.computeIfAbsent(aiConfig.getConnectTimeout(model), connectTimeout -> {
+            log.info("Creating upstream HTTP/2 client (connectTimeout={}, executor={})",
+                    connectTimeout, aiConfig.getHttp().getExecutor());
+            return HttpClient.newBuilder()
+                    .version(HttpClient.Version.HTTP_2)
+                    .connectTimeout(connectTimeout)
+                    .followRedirects(HttpClient.Redirect.NORMAL)
+                    .executor(executor)
+                    .build();
+        });
+    }
+
+    private void recordSession(HttpResponse<?> response) {
+        response.sslSession().ifPresent(session -> {
+            if (seenSessions.add(sessionKey(session))) {
+                handshakes.increment();
+            } else {
+                reusedConnections.increment();
+            }
+        });
+    }
+
+    private String sessionKey(SSLSession session) {
+        return Base64.getEncoder().encodeToString(session.getId()) + ":" + session.getCreationTime();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        clients.values().forEach(HttpClient::shutdownNow);
+        executor.shutdownNow();
+    }
+}
@@ -0,0 +1,224 @@
+package com.ainexus.backend.upstream;
+
+import com.ainexus.backend.config.AIConfig;
+import jakarta.annotation.PreDestroy;
+import org.springframework.stereotype.Component;
+
+import javax.net.ssl.SSLSession;
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpHeaders;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.net.http.HttpTimeoutException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Flow;
+import java.util.concurrent.SubmissionPublisher;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * In-process provider for load testing: answers with generated completions after a simulated
+ * delay, without any network I/O. Latency is log-normal around the configured median, streamed
+ * responses arrive chunk by chunk at {@code chunk-interval}, and a share of requests fails with
+ * {@code error-status}. Bodies go through the caller's {@link HttpResponse.BodyHandler}, so the
+ * usual decoding, streaming and metrics code runs exactly as it does against OpenRouter.
+ */
+@Component
+public class StubProvider implements UpstreamProvider {
+
+    public static final String NAME = "stub";
+
+    private static final URI ENDPOINT = URI.create("http://stub.invalid/v1/chat/completions");
+    private static final String[] WORDS = {
+            "the", "model", "latency", "request", "stream", "token", "answer", "system", "data", "result",
+            "simple", "quick", "value", "server", "client", "cache", "window", "budget", "context", "reply"
+    };
+
+    private final AIConfig aiConfig;
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+
+    public StubProvider(AIConfig aiConfig) {
+        this.aiConfig = aiConfig;
+    }
+
+    @Override
+    public String name() {
+        return NAME;
+    }
+
+    @Override
+    public boolean requiresApiKey() {
+        return false;
+    }
+
+    @Override
+    public HttpRequest.Builder newRequest(String model, String apiKey) {
+        return HttpRequest.newBuilder()
+                .uri(ENDPOINT)
+                .header("Content-Type", "application/json")
+                .timeout(aiConfig.getReadTimeout(model));
+    }
+
+    @Override
+    public <T> HttpResponse<T> send(String model, HttpRequest request, HttpResponse.BodyHandler<T> handler)
+            throws IOException, InterruptedException {
+        CompletableFuture<HttpResponse<T>> future = sendAsync(model, request, handler);
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            future.cancel(true);
+            throw e;
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException io) {
+                throw io;
+            }
+            if (e.getCause() instanceof RuntimeException re) {
+                throw re;
+            }
+            throw new IOException(e.getCause());
+        }
+    }
+
+    @Override
+    public <T> CompletableFuture<HttpResponse<T>> sendAsync(String model, HttpRequest request,
+                                                            HttpResponse.BodyHandler<T> handler) {
+        CompletableFuture<HttpResponse<T>> result = new CompletableFuture<>();
+        executor.execute(() -> {
+            try {
+                respond(model, request, handler, result);
+            } catch (InterruptedException e) {
+                result.completeExceptionally(new IOException("Stub response interrupted"));
+            } catch (Exception e) {
+                result.completeExceptionally(e);
+            }
+        });
+        return result;
+    }
+
+    private <T> void respond(String model, HttpRequest request, HttpResponse.BodyHandler<T> handler,
+                             CompletableFuture<HttpResponse<T>> result) throws IOException, InterruptedException {
+        AIConfig.Stub settings = aiConfig.getStub(model);
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        boolean streaming = request.headers().firstValue("Accept")
+                .filter(accept -> accept.contains("text/event-stream"))
+                .isPresent();
+
+        Duration median = streaming ? settings.getFirstTokenMedian() : settings.getLatencyMedian();
+        long delay = (long) (median.toMillis() * Math.exp(settings.getLatencySigma() * random.nextGaussian()));
+        long timeout = request.timeout().map(Duration::toMillis).orElse(Long.MAX_VALUE);
+        if (delay >= timeout) {
+            Thread.sleep(timeout);
+            throw new HttpTimeoutException("request timed out");
+        }
+        Thread.sleep(delay);
+        if (result.isDone()) {
+            return; // cancelled, e.g. the losing half of a hedged pair
+        }
+
+        if (random.nextDouble() < settings.getErrorRate()) {
+            String error = "{\"error\":{\"message\":\"Simulated upstream failure\",\"code\":"
+                    + settings.getErrorStatus() + "}}";
+            deliver(request, handler, result, settings.getErrorStatus(), "application/json", List.of(error), 0);
+            return;
+        }
+
+        int tokens = Math.max(1, (int) (settings.getResponseTokens() * (0.5 + random.nextDouble())));
+        int promptTokens = (int) (request.bodyPublisher().map(HttpRequest.BodyPublisher::contentLength).orElse(0L) / 4);
+        if (streaming) {
+            List<String> events = new ArrayList<>(tokens + 2);
+            for (int i = 0; i < tokens; i++) {
+                events.add("data: {\"choices\":[{\"index\":0,\"delta\":{\"content\":\"" + word(random, i) + "\"}}]}\n\n");
+            }
+            events.add("data: {\"choices\":[],\"usage\":{\"prompt_tokens\":" + promptTokens
+                    + ",\"completion_tokens\":" + tokens + ",\"total_tokens\":" + (promptTokens + tokens) + "}}\n\n");
+            events.add("data: [DONE]\n\n");
+            deliver(request, handler, result, 200, "text/event-stream", events, settings.getChunkInterval().toMillis());
+        } else {
+            StringBuilder content = new StringBuilder();
+            for (int i = 0; i < tokens; i++) {
+                content.append(word(random, i));
+            }
+            String body = "{\"id\":\"stub-" + random.nextLong(Long.MAX_VALUE) + "\",\"model\":\"stub/" + model + "\","
+                    + "\"choices\":[{\"index\":0,\"message\":{\"role\":\"assistant\",\"content\":\"" + content + "\"},"
+                    + "\"finish_reason\":\"stop\"}],"
+                    + "\"usage\":{\"prompt_tokens\":" + promptTokens + ",\"completion_tokens\":" + tokens
+                    + ",\"total_tokens\":" + (promptTokens + tokens) + "}}";
+            deliver(request, handler, result, 200, "application/json", List.of(body), 0);
+        }
+    }
+
+    private static String word(ThreadLocalRandom random, int index) {
+        return (index == 0 ? "" : " ") + WORDS[random.nextInt(WORDS.length)];
+    }
+
+    // Feeds the parts to the handler's subscriber, pausing intervalMs between them as a slow upstream would
+    private <T> void deliver(HttpRequest request, HttpResponse.BodyHandler<T> handler,
+                             CompletableFuture<HttpResponse<T>> result, int status, String contentType,
+                             List<String> parts, long intervalMs) throws InterruptedException {
+        HttpHeaders headers = HttpHeaders.of(Map.of("content-type", List.of(contentType)), (name, value) -> true);
+        HttpResponse.BodySubscriber<T> subscriber = handler.apply(new ResponseInfo(status, headers, HttpClient.Version.HTTP_1_1));
+        try (SubmissionPublisher<List<ByteBuffer>> publisher = new SubmissionPublisher<>(executor, Flow.defaultBufferSize())) {
+            publisher.subscribe(subscriber);
+            subscriber.getBody().whenComplete((body, error) -> {
+                if (error != null) {
+                    result.completeExceptionally(error);
+                } else {
+                    result.complete(new Response<>(request, status, headers, body));
+                }
+            });
+            for (int i = 0; i < parts.size(); i++) {
+                if (i > 0 && intervalMs > 0) {
+                    Thread.sleep(intervalMs);
+                }
+                if (!publisher.hasSubscribers()) {
+                    return; // the consumer closed the body early
+                }
+                publisher.submit(List.of(ByteBuffer.wrap(parts.get(i).getBytes(StandardCharsets.UTF_8))));
+            }
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    private record ResponseInfo(int statusCode, HttpHeaders headers, HttpClient.Version version)
+            implements HttpResponse.ResponseInfo {
+    }
+
+    private record Response<T>(HttpRequest request, int statusCode, HttpHeaders headers, T body)
+            implements HttpResponse<T> {
+
+        @Override
+        public Optional<HttpResponse<T>> previousResponse() {
+            return Optional.empty();
+        }
+
+        @Override
+        public Optional<SSLSession> sslSession() {
+            return Optional.empty();
+        }
+
+        @Override
+        public URI uri() {
+            return request.uri();
+        }
+
+        @Override
+        public HttpClient.Version version() {
+            return HttpClient.Version.HTTP_1_1;
+        }
+    }
+}
@@ -0,0 +1,211 @@
+package com.ainexus.backend.upstream;
+
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.io.SerializedString;
+import org.springframework.stereotype.Component;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.http.HttpRequest;
+import java.util.List;
+
+/**
+ * Streaming JSON codec for OpenRouter request and response bodies.
+ * Requests are written token by token with a {@link JsonGenerator} (which handles escaping),
+ * and responses are scanned with a {@link JsonParser} that only materialises the fields we use,
+ * skipping everything else without building a tree.
+ */
+@Component
+public class UpstreamCodec {
+
+    private static final int INITIAL_BUFFER = 4096;
+
+    private final JsonFactory jsonFactory = new JsonFactory();
+
+    /** Token counts from the upstream {@code usage} block. */
+    public record Usage(int promptTokens, int completionTokens) {
+    }
+
+    public record Completion(String content, String error, Usage usage) {
+    }
+
+    // usage is only present on the final chunk, and only when stream_options.include_usage was sent
+    public record StreamChunk(String delta, String error, Usage usage) {
+    }
+
+    public HttpRequest.BodyPublisher encode(ChatCompletionRequest request) throws IOException {
+        return encode(request, null);
+    }
+
+    /**
+     * Encodes {@code request}, appending an already encoded message fragment (see
+     * {@link #encodeMessages}) after {@code request.messages()} inside the messages array.
+     */
+    public HttpRequest.BodyPublisher encode(ChatCompletionRequest request, byte[] encodedHistory) throws IOException {
+        return HttpRequest.BodyPublishers.ofByteArray(encodeBytes(request, encodedHistory));
+    }
+
+    public byte[] encodeBytes(ChatCompletionRequest request, byte[] encodedHistory) throws IOException {
+        int historyBytes = encodedHistory != null ? encodedHistory.length : 0;
+        ByteArrayOutputStream out = new ByteArrayOutputStream(INITIAL_BUFFER + historyBytes);
+        try (JsonGenerator gen = jsonFactory.createGenerator(out, JsonEncoding.UTF8)) {
+            gen.writeStartObject();
+            gen.writeStringField("model", request.model());
+            if (request.stream()) {
+                gen.writeBooleanField("stream", true);
+                gen.writeObjectFieldStart("stream_options");
+                gen.writeBooleanField("include_usage", true);
+                gen.writeEndObject();
+            }
+            gen.writeArrayFieldStart("messages");
+            for (ChatCompletionRequest.Message message : request.messages()) {
+                writeMessage(gen, message);
+            }
+            if (historyBytes > 0) {
+                // Splice the pre-encoded fragment in as-is; the generator only tracks commas for
+                // elements it wrote itself, so add the separator by hand
+                gen.flush();
+                if (!request.messages().isEmpty()) {
+                    out.write(',');
+                }
+                out.write(encodedHistory);
+            }
+            gen.writeEndArray();
+            if (request.responseFormat() != null) {
+                gen.writeObjectFieldStart("response_format");
+                gen.writeStringField("type", request.responseFormat());
+                gen.writeEndObject();
+            }
+            gen.writeEndObject();
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * Encodes messages as a comma-separated fragment of JSON objects (no surrounding brackets),
+     * suitable for caching and for concatenating with other fragments.
+     */
+    public byte[] encodeMessages(List<ChatCompletionRequest.Message> messages) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(INITIAL_BUFFER);
+        try (JsonGenerator gen = jsonFactory.createGenerator(out, JsonEncoding.UTF8)) {
+            // Root-level values are separated by a space by default; use commas instead
+            gen.setRootValueSeparator(new SerializedString(","));
+            for (ChatCompletionRequest.Message message : messages) {
+                writeMessage(gen, message);
+            }
+        }
+        return out.toByteArray();
+    }
+
+    private void writeMessage(JsonGenerator gen, ChatCompletionRequest.Message message) throws IOException {
+        gen.writeStartObject();
+        gen.writeStringField("role", message.role());
+        gen.writeStringField("content", message.content());
+        gen.writeEndObject();
+    }
+
+    /**
+     * Reads {@code choices[0].message.content} (or {@code error.message}) from a
+     * non-streaming completion body.
+     */
+    public Completion decodeCompletion(InputStream body) throws IOException {
+        try (JsonParser parser = jsonFactory.createParser(body)) {
+            return readCompletion(parser, "message");
+        }
+    }
+
+    /**
+     * Reads {@code choices[0].delta.content} (or {@code error.message}) from the JSON payload
+     * of a single SSE {@code data:} line.
+     */
+    public StreamChunk decodeChunk(String data) throws IOException {
+        try (JsonParser parser = jsonFactory.createParser(data)) {
+            Completion c = readCompletion(parser, "delta");
+            return new StreamChunk(c.content(), c.error(), c.usage());
+        }
+    }
+
+    private Completion readCompletion(JsonParser parser, String choiceField) throws IOException {
+        String content = null;
+        String error = null;
+        Usage usage = null;
+        if (parser.nextToken() != JsonToken.START_OBJECT) {
+            throw new IOException("Expected JSON object from upstream");
+        }
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.currentName();
+            JsonToken value = parser.nextToken();
+            if ("choices".equals(field) && value == JsonToken.START_ARRAY) {
+                content = readFirstChoice(parser, choiceField);
+            } else if ("error".equals(field) && value == JsonToken.START_OBJECT) {
+                error = readStringField(parser, "message");
+            } else if ("usage".equals(field) && value == JsonToken.START_OBJECT) {
+                usage = readUsage(parser);
+            } else {
+                parser.skipChildren();
+            }
+        }
+        return new Completion(content, error, usage);
+    }
+
+    // Positioned on the choices START_ARRAY; leaves the parser on its END_ARRAY
+    private String readFirstChoice(JsonParser parser, String choiceField) throws IOException {
+        String content = null;
+        boolean first = true;
+        while (parser.nextToken() != JsonToken.END_ARRAY) {
+            if (first && parser.currentToken() == JsonToken.START_OBJECT) {
+                while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                    String field = parser.currentName();
+                    JsonToken value = parser.nextToken();
+                    if (choiceField.equals(field) && value == JsonToken.START_OBJECT) {
+                        content = readStringField(parser, "content");
+                    } else {
+                        parser.skipChildren();
+                    }
+                }
+            } else {
+                parser.skipChildren();
+            }
+            first = false;
+        }
+        return content;
+    }
+
+    // Positioned on the usage START_OBJECT; leaves the parser on its END_OBJECT
+    private Usage readUsage(JsonParser parser) throws IOException {
+        int prompt = 0;
+        int completion = 0;
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.currentName();
+            JsonToken value = parser.nextToken();
+            if ("prompt_tokens".equals(field) && value == JsonToken.VALUE_NUMBER_INT) {
+                prompt = parser.getIntValue();
+            } else if ("completion_tokens".equals(field) && value == JsonToken.VALUE_NUMBER_INT) {
+                completion = parser.getIntValue();
+            } else {
+                parser.skipChildren();
+            }
+        }
+        return new Usage(prompt, completion);
+    }
+
+    // Positioned on an object's START_OBJECT; leaves the parser on its END_OBJECT
+    private String readStringField(JsonParser parser, String name) throws IOException {
+        String result = null;
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.currentName();
+            JsonToken value = parser.nextToken();
+            if (name.equals(field) && value == JsonToken.VALUE_STRING) {
+                result = parser.getText();
+            } else {
+                parser.skipChildren();
+            }
+        }
+        return result;
+    }
+}
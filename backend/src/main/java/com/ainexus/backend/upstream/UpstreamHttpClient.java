@@ -0,0 +1,88 @@
+package com.ainexus.backend.upstream;
+
+import com.ainexus.backend.config.AIConfig;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.log4j.Log4j2;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Entry point for all upstream traffic. Each model is served by the {@link UpstreamProvider}
+ * named in {@code openrouter.providers} (falling back to {@code openrouter.provider}); request
+ * timing is recorded here so that every provider reports the same metrics.
+ */
+@Log4j2
+@Component
+public class UpstreamHttpClient {
+
+    private final AIConfig aiConfig;
+    private final MeterRegistry meterRegistry;
+    private final Map<String, UpstreamProvider> providers;
+
+    private final AtomicInteger inFlight = new AtomicInteger();
+
+    public UpstreamHttpClient(AIConfig aiConfig, MeterRegistry meterRegistry, List<UpstreamProvider> providers) {
+        this.aiConfig = aiConfig;
+        this.meterRegistry = meterRegistry;
+        this.providers = providers.stream().collect(Collectors.toMap(UpstreamProvider::name, Function.identity()));
+        meterRegistry.gauge("upstream.requests.inflight", inFlight);
+    }
+
+    /** Whether {@code model} can be called with {@code apiKey} (null when none is configured). */
+    public boolean hasCredentials(String model, String apiKey) {
+        return apiKey != null || !providerFor(model).requiresApiKey();
+    }
+
+    public HttpRequest.Builder newRequest(String model, String apiKey) {
+        return providerFor(model).newRequest(model, apiKey);
+    }
+
+    public <T> HttpResponse<T> send(String model, HttpRequest request, HttpResponse.BodyHandler<T> handler)
+            throws IOException, InterruptedException {
+        UpstreamProvider provider = providerFor(model);
+        Timer.Sample sample = Timer.start(meterRegistry);
+        inFlight.incrementAndGet();
+        String outcome = "error";
+        try {
+            HttpResponse<T> response = provider.send(model, request, handler);
+            outcome = String.valueOf(response.statusCode());
+            return response;
+        } finally {
+            inFlight.decrementAndGet();
+            sample.stop(meterRegistry.timer("upstream.requests", "model", model, "status", outcome,
+                    "provider", provider.name()));
+        }
+    }
+
+    public <T> CompletableFuture<HttpResponse<T>> sendAsync(String model, HttpRequest request,
+                                                            HttpResponse.BodyHandler<T> handler) {
+        UpstreamProvider provider = providerFor(model);
+        Timer.Sample sample = Timer.start(meterRegistry);
+        inFlight.incrementAndGet();
+        return provider.sendAsync(model, request, handler).whenComplete((response, error) -> {
+            inFlight.decrementAndGet();
+            String outcome = response != null ? String.valueOf(response.statusCode()) : "error";
+            sample.stop(meterRegistry.timer("upstream.requests", "model", model, "status", outcome,
+                    "provider", provider.name()));
+        });
+    }
+
+    private UpstreamProvider providerFor(String model) {
+        String name = aiConfig.getProviderName(model);
+        UpstreamProvider provider = providers.get(name);
+        if (provider == null) {
+            throw new IllegalStateException("Unknown upstream provider '" + name + "' for model " + model);
+        }
+        return provider;
+    }
+}
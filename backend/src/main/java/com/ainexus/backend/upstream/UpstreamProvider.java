@@ -0,0 +1,30 @@
+package com.ainexus.backend.upstream;
+
+import java.io.IOException;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Transport behind {@link UpstreamHttpClient}. Requests and responses keep the OpenAI-compatible
+ * chat-completions wire format, so encoding, decoding, resilience and limiting stay the same
+ * whichever provider serves a model.
+ */
+public interface UpstreamProvider {
+
+    /** Name used in {@code openrouter.provider} / {@code openrouter.providers}. */
+    String name();
+
+    /** Whether {@link #newRequest} needs the model's API key; models without one are not offered otherwise. */
+    default boolean requiresApiKey() {
+        return true;
+    }
+
+    HttpRequest.Builder newRequest(String model, String apiKey);
+
+    <T> HttpResponse<T> send(String model, HttpRequest request, HttpResponse.BodyHandler<T> handler)
+            throws IOException, InterruptedException;
+
+    <T> CompletableFuture<HttpResponse<T>> sendAsync(String model, HttpRequest request,
+                                                     HttpResponse.BodyHandler<T> handler);
+}
@@ -0,0 +1,259 @@
+package com.ainexus.backend.upstream;
+
+import com.ainexus.backend.config.AIConfig;
+import com.ainexus.backend.repository.ChatMessageRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.log4j.Log4j2;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Component;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.net.http.HttpTimeoutException;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Per-model resilience in front of {@link UpstreamHttpClient}: fails fast while a model's
+ * circuit is open, derives the request timeout from the model's observed latency, and optionally
+ * hedges slow calls. Latency is time to response headers, kept apart for streamed and complete
+ * calls (see {@link ModelHealth}); at startup the configured models are seeded in the background
+ * with the upstream first-byte times stored in ResponseMetrics.
+ */
+@Log4j2
+@Component
+public class UpstreamResilience {
+
+    private static final int SEED_SAMPLES = 200;
+
+    private final AIConfig aiConfig;
+    private final UpstreamHttpClient upstreamHttpClient;
+    private final ChatMessageRepository chatMessageRepository;
+    private final MeterRegistry meterRegistry;
+
+    private final Map<String, ModelHealth> health = new ConcurrentHashMap<>();
+
+    private final Counter shortCircuited;
+    private final Counter hedged;
+
+    public UpstreamResilience(AIConfig aiConfig, UpstreamHttpClient upstreamHttpClient,
+                              ChatMessageRepository chatMessageRepository, MeterRegistry meterRegistry) {
+        this.aiConfig = aiConfig;
+        this.upstreamHttpClient = upstreamHttpClient;
+        this.chatMessageRepository = chatMessageRepository;
+        this.meterRegistry = meterRegistry;
+        this.shortCircuited = Counter.builder("upstream.circuit.rejected").register(meterRegistry);
+        this.hedged = Counter.builder("upstream.hedged").register(meterRegistry);
+    }
+
+    public ModelHealth health(String model) {
+        return health.computeIfAbsent(model, this::createHealth);
+    }
+
+    /**
+     * Sends {@code request} for {@code model} under a {@link ConcurrencyLimiter} permit held by the
+     * caller, recording the outcome on it. {@code streaming} selects the latency window the timeout
+     * is derived from; streaming calls are never hedged, since a duplicated stream cannot be merged.
+     */
+    public <T> HttpResponse<T> send(String model, ConcurrencyLimiter.Permit permit, HttpRequest.Builder request,
+                                    HttpResponse.BodyHandler<T> handler, boolean streaming)
+            throws IOException, InterruptedException {
+        return send(model, permit, request, handler, streaming, aiConfig.getReadTimeout(model));
+    }
+
+    /** As above, with a timeout of at most {@code ceiling} instead of the model's read timeout. */
+    public <T> HttpResponse<T> send(String model, ConcurrencyLimiter.Permit permit, HttpRequest.Builder request,
+                                    HttpResponse.BodyHandler<T> handler, boolean streaming, Duration ceiling)
+            throws IOException, InterruptedException {
+        ModelHealth modelHealth = health(model);
+        if (!modelHealth.tryAcquire()) {
+            shortCircuited.increment();
+            throw new CircuitOpenException(model, modelHealth.retryAfterMs());
+        }
+
+        Duration timeout = modelHealth.timeout(ceiling, streaming);
+        HttpRequest httpRequest = request.timeout(timeout).build();
+        long start = System.currentTimeMillis();
+        boolean recorded = false;
+        try {
+            HttpResponse<T> response = !streaming && modelHealth.isHedgingEnabled()
+                    ? sendHedged(model, httpRequest, handler, modelHealth.percentile(0.95, false))
+                    : upstreamHttpClient.send(model, httpRequest, handler);
+            long elapsed = System.currentTimeMillis() - start;
+            boolean overloaded = isOverloaded(response);
+            if (overloaded) {
+                modelHealth.onFailure(-1, streaming);
+            } else {
+                modelHealth.onSuccess(elapsed, streaming);
+            }
+            permit.record(elapsed, overloaded);
+            recorded = true;
+            return response;
+        } catch (HttpTimeoutException e) {
+            long elapsed = System.currentTimeMillis() - start;
+            modelHealth.onFailure(elapsed, streaming);
+            permit.record(elapsed, true);
+            recorded = true;
+            throw e;
+        } catch (IOException e) {
+            modelHealth.onFailure(-1, streaming);
+            permit.record(System.currentTimeMillis() - start, true);
+            recorded = true;
+            throw e;
+        } finally {
+            if (!recorded) {
+                // Cancelled by the caller (e.g. compare deadline): says nothing about the model
+                modelHealth.release();
+            }
+        }
+    }
+
+    private <T> HttpResponse<T> sendHedged(String model, HttpRequest request, HttpResponse.BodyHandler<T> handler,
+                                           long hedgeAfterMs) throws IOException, InterruptedException {
+        CompletableFuture<HttpResponse<T>> primary = upstreamHttpClient.sendAsync(model, request, handler);
+        if (hedgeAfterMs < 0) {
+            return await(primary);
+        }
+        try {
+            return primary.get(hedgeAfterMs, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            hedged.increment();
+            log.debug("Hedging {} request after {}ms", model, hedgeAfterMs);
+        } catch (ExecutionException e) {
+            throw unwrap(e);
+        }
+
+        CompletableFuture<HttpResponse<T>> secondary = upstreamHttpClient.sendAsync(model, request, handler);
+        CompletableFuture<HttpResponse<T>> winner = firstSuccessful(primary, secondary);
+        try {
+            return await(winner);
+        } finally {
+            primary.cancel(true);
+            secondary.cancel(true);
+        }
+    }
+
+    /**
+     * The first of the two responses that does not signal overload. A 429 or 5xx is only returned
+     * if the other copy fails as well, and an exception only if neither produced a response.
+     */
+    static <T> CompletableFuture<HttpResponse<T>> firstSuccessful(CompletableFuture<HttpResponse<T>> a,
+                                                                  CompletableFuture<HttpResponse<T>> b) {
+        CompletableFuture<HttpResponse<T>> result = new CompletableFuture<>();
+        AtomicInteger pending = new AtomicInteger(2);
+        AtomicReference<HttpResponse<T>> overloaded = new AtomicReference<>();
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        for (CompletableFuture<HttpResponse<T>> candidate : List.of(a, b)) {
+            candidate.whenComplete((response, error) -> {
+                if (error != null) {
+                    failure.compareAndSet(null, error);
+                } else if (!isOverloaded(response)) {
+                    if (!result.complete(response)) {
+                        discard(response);
+                    }
+                } else if (!overloaded.compareAndSet(null, response)) {
+                    discard(response);
+                }
+                if (pending.decrementAndGet() == 0) {
+                    HttpResponse<T> fallback = overloaded.get();
+                    if (result.isDone()) {
+                        if (fallback != null) {
+                            discard(fallback);
+                        }
+                    } else if (fallback != null) {
+                        result.complete(fallback);
+                    } else {
+                        result.completeExceptionally(failure.get());
+                    }
+                }
+            });
+        }
+        return result;
+    }
+
+    private static boolean isOverloaded(HttpResponse<?> response) {
+        return response.statusCode() == 429 || response.statusCode() >= 500;
+    }
+
+    // The body of a response that is not returned is never read; release its stream
+    private static void discard(HttpResponse<?> response) {
+        if (response.body() instanceof Closeable closeable) {
+            try {
+                closeable.close();
+            } catch (IOException ignored) {
+                // nothing left to clean up
+            }
+        }
+    }
+
+    private static <T> T await(CompletableFuture<T> future) throws IOException, InterruptedException {
+        try {
+            return future.get();
+        } catch (ExecutionException e) {
+            throw unwrap(e);
+        } catch (InterruptedException e) {
+            future.cancel(true);
+            throw e;
+        }
+    }
+
+    private static IOException unwrap(ExecutionException e) {
+        Throwable cause = e.getCause() instanceof CompletionException ce && ce.getCause() != null
+                ? ce.getCause() : e.getCause();
+        if (cause instanceof IOException io) {
+            return io;
+        }
+        if (cause instanceof RuntimeException re) {
+            throw re;
+        }
+        return new IOException(cause);
+    }
+
+    /** Seeds the latency windows of the configured models without holding up startup or requests. */
+    @EventListener(ApplicationReadyEvent.class)
+    public void seedFromHistory() {
+        Thread.ofVirtual().name("upstream-health-seed").start(() -> aiConfig.getModels().keySet().forEach(this::seed));
+    }
+
+    private void seed(String model) {
+        try {
+            ModelHealth modelHealth = health(model);
+            modelHealth.seed(chatMessageRepository.findRecentStreamedFirstByteTimes(model, PageRequest.of(0, SEED_SAMPLES)), true);
+            modelHealth.seed(chatMessageRepository.findRecentCompleteFirstByteTimes(model, PageRequest.of(0, SEED_SAMPLES)), false);
+        } catch (Exception e) {
+            log.warn("Could not seed latency window for {}: {}", model, e.getMessage());
+        }
+    }
+
+    private ModelHealth createHealth(String model) {
+        ModelHealth modelHealth = new ModelHealth(aiConfig.getResilience(model));
+        Gauge.builder("upstream.circuit.state", modelHealth, h -> h.getState().ordinal())
+                .description("0 = closed, 1 = open, 2 = half-open")
+                .tag("model", model)
+                .register(meterRegistry);
+        Gauge.builder("upstream.latency.p95", modelHealth, h -> h.percentile(0.95, true))
+                .tag("model", model)
+                .tag("call", "streamed")
+                .register(meterRegistry);
+        Gauge.builder("upstream.latency.p95", modelHealth, h -> h.percentile(0.95, false))
+                .tag("model", model)
+                .tag("call", "complete")
+                .register(meterRegistry);
+        return modelHealth;
+    }
+}
@@ -0,0 +1,73 @@
+package com.ainexus.backend.upstream;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.stereotype.Component;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Base64;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * Coalesces concurrent identical upstream calls: while a call for a given model and encoded
+ * payload is in flight, later callers wait on its result instead of issuing their own.
+ * Results are not retained once the call completes (see ResponseCache for that).
+ */
+@Component
+public class UpstreamSingleFlight {
+
+    private final ConcurrentHashMap<String, CompletableFuture<Object>> inFlight = new ConcurrentHashMap<>();
+
+    private final Counter executed;
+    private final Counter coalesced;
+
+    public UpstreamSingleFlight(MeterRegistry meterRegistry) {
+        this.executed = Counter.builder("upstream.singleflight.executed")
+                .description("Upstream calls actually sent")
+                .register(meterRegistry);
+        this.coalesced = Counter.builder("upstream.singleflight.coalesced")
+                .description("Upstream calls served by joining an identical in-flight call")
+                .register(meterRegistry);
+        meterRegistry.gaugeMapSize("upstream.singleflight.inflight", List.of(), inFlight);
+    }
+
+    public static String key(String model, byte[] payload) {
+        try {
+            byte[] hash = MessageDigest.getInstance("SHA-256").digest(payload);
+            return model + ":" + Base64.getEncoder().encodeToString(hash);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    public <T> T execute(String key, Callable<T> call) throws Exception {
+        CompletableFuture<Object> mine = new CompletableFuture<>();
+        CompletableFuture<Object> existing = inFlight.putIfAbsent(key, mine);
+        if (existing != null) {
+            coalesced.increment();
+            try {
+                return (T) existing.get();
+            } catch (ExecutionException e) {
+                throw e.getCause() instanceof Exception cause ? cause : e;
+            }
+        }
+
+        executed.increment();
+        try {
+            T result = call.call();
+            mine.complete(result);
+            return result;
+        } catch (Exception e) {
+            mine.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(key, mine);
+        }
+    }
+}
@@ -0,0 +1,69 @@
+-- Schema as Hibernate's ddl-auto created it. Every statement is a no-op on databases that
+-- already have it, so this version applies cleanly to both new and existing installations.
+
+create table if not exists users (
+    id bigint generated by default as identity primary key,
+    email varchar(255) not null unique,
+    password varchar(255),
+    full_name varchar(255),
+    provider varchar(255),
+    is_premium boolean default false,
+    credits int default 300
+);
+
+create table if not exists conversations (
+    id varchar(255) primary key,
+    ai_model varchar(255),
+    created_at varchar(255),
+    updated_at varchar(255),
+    summary text,
+    summary_message_count integer,
+    user_id bigint references users (id)
+);
+
+create table if not exists chat_messages (
+    id varchar(255) primary key,
+    content text,
+    is_user boolean not null,
+    timestamp varchar(255),
+    ai_model varchar(255),
+    requested_model varchar(255),
+    response_time_ms bigint,
+    word_count integer,
+    tokens_per_second float(53),
+    time_to_first_token_ms bigint,
+    streaming_tokens_per_second float(53),
+    cached boolean,
+    prompt_tokens integer,
+    completion_tokens integer,
+    usage_reported boolean,
+    queue_ms bigint,
+    encode_ms bigint,
+    upstream_first_byte_ms bigint,
+    upstream_total_ms bigint,
+    conversation_id varchar(255) references conversations (id)
+);
+
+create table if not exists feedback (
+    id bigint generated by default as identity primary key,
+    user_email varchar(255) not null,
+    content varchar(2000) not null,
+    type varchar(255),
+    contact_info varchar(255),
+    created_at timestamp(6)
+);
+
+-- Columns added after the first deployments
+alter table conversations add column if not exists summary text;
+alter table conversations add column if not exists summary_message_count integer;
+alter table chat_messages add column if not exists requested_model varchar(255);
+alter table chat_messages add column if not exists time_to_first_token_ms bigint;
+alter table chat_messages add column if not exists streaming_tokens_per_second float(53);
+alter table chat_messages add column if not exists cached boolean;
+alter table chat_messages add column if not exists prompt_tokens integer;
+alter table chat_messages add column if not exists completion_tokens integer;
+alter table chat_messages add column if not exists usage_reported boolean;
+alter table chat_messages add column if not exists queue_ms bigint;
+alter table chat_messages add column if not exists encode_ms bigint;
+alter table chat_messages add column if not exists upstream_first_byte_ms bigint;
+alter table chat_messages add column if not exists upstream_total_ms bigint;
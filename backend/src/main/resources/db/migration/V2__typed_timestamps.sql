@@ -0,0 +1,12 @@
+-- Backfills the ISO strings written by LocalDateTime.now().toString() (e.g. 2025-03-01T14:05:09.123456).
+-- They carry no offset and are read as UTC, the zone the servers run in.
+
+alter table chat_messages
+    alter column timestamp type timestamptz
+    using (cast(nullif(timestamp, '') as timestamp) at time zone 'UTC');
+
+alter table conversations
+    alter column created_at type timestamptz
+    using (cast(nullif(created_at, '') as timestamp) at time zone 'UTC'),
+    alter column updated_at type timestamptz
+    using (cast(nullif(updated_at, '') as timestamp) at time zone 'UTC');
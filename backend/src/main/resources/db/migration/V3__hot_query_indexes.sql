@@ -0,0 +1,10 @@
+-- Message pages and per-conversation scans (summary previews, per-user analytics after the
+-- users -> conversations join)
+create index if not exists idx_chat_messages_conversation_ts on chat_messages (conversation_id, timestamp, id);
+
+-- Conversation list of a user, newest first, and the user -> conversations join
+create index if not exists idx_conversations_user_updated on conversations (user_id, updated_at desc, id desc);
+
+-- AI replies only: the leaderboard's date range and the per-model recent response times
+create index if not exists idx_chat_messages_replies_ts on chat_messages (timestamp) where is_user = false;
+create index if not exists idx_chat_messages_replies_model_ts on chat_messages (ai_model, timestamp) where is_user = false;
@@ -0,0 +1,17 @@
+-- Conversations whose messages were moved to conversation_archives by the retention job
+alter table conversations add column if not exists archived_at timestamptz;
+
+-- One row per archived conversation; content is a gzip'd JSON array of its messages
+create table if not exists conversation_archives (
+    conversation_id varchar(255) primary key references conversations (id) on delete cascade,
+    archived_at timestamptz not null,
+    message_count integer not null,
+    last_message_preview varchar(120),
+    content bytea not null
+);
+
+-- Already compressed, so TOAST should store it out of line without trying again
+alter table conversation_archives alter column content set storage external;
+
+-- Retention scan over hot conversations by age
+create index if not exists idx_conversations_hot_updated on conversations (updated_at) where archived_at is null;
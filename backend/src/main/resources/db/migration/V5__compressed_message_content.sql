@@ -0,0 +1,8 @@
+-- Content becomes a codec id byte followed by the payload (see ContentCodec). Existing rows are
+-- rewritten as codec 0, plain UTF-8; the application compresses new content above its threshold
+alter table chat_messages
+    alter column content type bytea
+    using ('\x00'::bytea || convert_to(content, 'UTF8'));
+
+-- Large values are deflated by the application already, so TOAST stores them without pglz
+alter table chat_messages alter column content set storage external;
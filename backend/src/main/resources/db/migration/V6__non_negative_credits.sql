@@ -0,0 +1,5 @@
+-- Credits are only changed by conditional updates (see CreditLedger); the constraint backs them up
+update users set credits = 0 where credits < 0;
+update users set credits = 300 where credits is null;
+alter table users alter column credits set not null;
+alter table users add constraint users_credits_non_negative check (credits >= 0);
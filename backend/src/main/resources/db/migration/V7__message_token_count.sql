@@ -0,0 +1,3 @@
+-- Estimated tokens of each message's content, recorded when it is written, so the context window
+-- is sized without decompressing history. Older rows stay null and are estimated from the content
+alter table chat_messages add column if not exists token_count integer;
@@ -0,0 +1,29 @@
+-- Metrics of archived replies, rolled up per conversation, UTC day and model by the retention job
+-- so that the rows themselves can leave chat_messages. Generated replies are the ones that called
+-- the upstream themselves; averages over them are sum / count, with a count per phase because
+-- the phase timings are not recorded on every reply
+create table if not exists archived_reply_metrics (
+    conversation_id varchar(255) not null references conversations (id) on delete cascade,
+    day date not null,
+    ai_model varchar(255) not null,
+    reply_count bigint not null,
+    auto_routed_count bigint not null,
+    word_count_sum bigint not null,
+    generated_count bigint not null,
+    response_time_sum double precision not null,
+    tokens_per_second_sum double precision not null,
+    queue_ms_sum double precision not null,
+    queue_ms_count bigint not null,
+    encode_ms_sum double precision not null,
+    encode_ms_count bigint not null,
+    first_byte_ms_sum double precision not null,
+    first_byte_ms_count bigint not null,
+    upstream_ms_sum double precision not null,
+    upstream_ms_count bigint not null,
+    prompt_tokens_sum bigint not null,
+    completion_tokens_sum bigint not null,
+    primary key (conversation_id, day, ai_model)
+);
+
+-- The leaderboard's date range
+create index if not exists idx_archived_reply_metrics_day on archived_reply_metrics (day);
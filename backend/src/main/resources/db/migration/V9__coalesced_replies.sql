@@ -0,0 +1,3 @@
+-- Replies that joined an identical in-flight upstream call; like cache hits they count towards
+-- volume but not towards latency, throughput or token usage
+alter table chat_messages add column if not exists coalesced boolean;
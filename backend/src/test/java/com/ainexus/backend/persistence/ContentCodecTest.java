@@ -0,0 +1,83 @@
+package com.ainexus.backend.persistence;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class ContentCodecTest {
+
+    private static final String LONG_TEXT = "The quick brown fox jumps over the lazy dog. ".repeat(100);
+
+    @Test
+    void keepsShortTextRaw() {
+        byte[] stored = ContentCodec.encode(utf8("Hello"), 1024, 1);
+
+        assertThat(stored[0]).isEqualTo(ContentCodec.RAW);
+        assertThat(ContentCodec.isCompressed(stored)).isFalse();
+        assertThat(ContentCodec.decode(stored)).isEqualTo("Hello");
+    }
+
+    @Test
+    void deflatesTextAtTheThreshold() {
+        byte[] stored = ContentCodec.encode(utf8(LONG_TEXT), LONG_TEXT.length(), 1);
+
+        assertThat(stored[0]).isEqualTo(ContentCodec.DEFLATE);
+        assertThat(stored.length).isLessThan(LONG_TEXT.length() / 4);
+        assertThat(ContentCodec.decode(stored)).isEqualTo(LONG_TEXT);
+    }
+
+    @Test
+    void keepsTextRawWhenDeflateDoesNotShrinkIt() {
+        byte[] stored = ContentCodec.encode(utf8("Hi!"), 0, 1);
+
+        assertThat(stored[0]).isEqualTo(ContentCodec.RAW);
+        assertThat(ContentCodec.decode(stored)).isEqualTo("Hi!");
+    }
+
+    @Test
+    void negativeThresholdDisablesCompression() {
+        assertThat(ContentCodec.encode(utf8(LONG_TEXT), -1, 9)[0]).isEqualTo(ContentCodec.RAW);
+    }
+
+    @Test
+    void roundTripsMultiByteText() {
+        String text = "Grüße aus Köln, 你好, 🙂 ".repeat(200);
+
+        assertThat(ContentCodec.decode(ContentCodec.encode(utf8(text), 1024, 1))).isEqualTo(text);
+        assertThat(ContentCodec.decode(ContentCodec.encode(utf8(text), -1, 1))).isEqualTo(text);
+    }
+
+    @Test
+    void previewsATruncatedDeflateStream() {
+        byte[] stored = ContentCodec.encode(utf8(LONG_TEXT), 1024, 1);
+
+        String preview = ContentCodec.preview(Arrays.copyOf(stored, 40), 120);
+
+        assertThat(LONG_TEXT).startsWith(preview);
+        assertThat(preview).isNotEmpty();
+        assertThat(ContentCodec.preview(stored, 120)).isEqualTo(LONG_TEXT.substring(0, 120));
+    }
+
+    @Test
+    void previewDropsACharacterCutByThePrefix() {
+        byte[] stored = ContentCodec.encode(utf8("ab🙂"), 1024, 1);
+
+        // The codec byte, "ab" and half of the emoji's four bytes
+        assertThat(ContentCodec.preview(Arrays.copyOf(stored, 5), 120)).isEqualTo("ab");
+        assertThat(ContentCodec.preview(null, 120)).isNull();
+        assertThat(ContentCodec.preview(new byte[]{ContentCodec.RAW}, 120)).isEmpty();
+    }
+
+    @Test
+    void rejectsUnknownCodecs() {
+        assertThatThrownBy(() -> ContentCodec.decode(new byte[]{9, 'x'})).isInstanceOf(IllegalStateException.class);
+    }
+
+    private static byte[] utf8(String text) {
+        return text.getBytes(StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,75 @@
+package com.ainexus.backend.persistence;
+
+import com.ainexus.backend.config.PersistenceConfig;
+import com.ainexus.backend.model.MessageContent;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class MessageContentConverterTest {
+
+    private static final String LONG_TEXT = "Lorem ipsum dolor sit amet, consectetur adipiscing elit. ".repeat(50);
+
+    private final PersistenceConfig persistenceConfig = new PersistenceConfig();
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final MessageContentConverter converter = new MessageContentConverter(persistenceConfig, meterRegistry);
+
+    @Test
+    void compressesLargeContentAndReadsItBack() {
+        byte[] stored = converter.convertToDatabaseColumn(MessageContent.of(LONG_TEXT));
+
+        assertThat(ContentCodec.isCompressed(stored)).isTrue();
+        assertThat(converter.convertToEntityAttribute(stored).text()).isEqualTo(LONG_TEXT);
+        assertThat(meterRegistry.counter("chat.content.compressed").count()).isEqualTo(1);
+        assertThat(meterRegistry.find("chat.content.bytes").tag("form", "stored").counter().count())
+                .isEqualTo(stored.length);
+    }
+
+    @Test
+    void storesSmallContentRaw() {
+        byte[] stored = converter.convertToDatabaseColumn(MessageContent.of("Short"));
+
+        assertThat(stored[0]).isEqualTo(ContentCodec.RAW);
+        assertThat(converter.convertToEntityAttribute(stored).text()).isEqualTo("Short");
+    }
+
+    @Test
+    void storesEverythingRawWhenDisabled() {
+        persistenceConfig.getCompression().setEnabled(false);
+
+        assertThat(converter.convertToDatabaseColumn(MessageContent.of(LONG_TEXT))[0]).isEqualTo(ContentCodec.RAW);
+    }
+
+    @Test
+    void decompressesOnFirstReadOnly() {
+        byte[] stored = converter.convertToDatabaseColumn(MessageContent.of(LONG_TEXT));
+
+        MessageContent loaded = converter.convertToEntityAttribute(stored);
+        assertThat(decodes()).isZero();
+        assertThat(loaded).isEqualTo(converter.convertToEntityAttribute(stored.clone())); // by stored bytes
+        assertThat(decodes()).isZero();
+
+        loaded.text();
+        loaded.text();
+        assertThat(decodes()).isEqualTo(1);
+    }
+
+    @Test
+    void writesLoadedContentBackUnchanged() {
+        byte[] stored = converter.convertToDatabaseColumn(MessageContent.of(LONG_TEXT));
+
+        assertThat(converter.convertToDatabaseColumn(converter.convertToEntityAttribute(stored))).isSameAs(stored);
+    }
+
+    @Test
+    void mapsNullToNull() {
+        assertThat(converter.convertToDatabaseColumn(null)).isNull();
+        assertThat(converter.convertToEntityAttribute(null)).isNull();
+        assertThat(MessageContent.of(null)).isNull();
+    }
+
+    private long decodes() {
+        return meterRegistry.find("chat.content.codec").tag("operation", "decode").timer().count();
+    }
+}
@@ -0,0 +1,163 @@
+package com.ainexus.backend.persistence;
+
+import com.ainexus.backend.model.ChatMessage;
+import com.ainexus.backend.model.ResponseMetrics;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.json.JsonMapper;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class MessageJournalTest {
+
+    private final ObjectMapper objectMapper = JsonMapper.builder().findAndAddModules().build();
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void replaysAcknowledgedTurnsAfterARestart() throws Exception {
+        try (MessageJournal journal = journal()) {
+            assertThat(journal.open()).isEmpty();
+            journal.append(List.of(turn("c1", "m1"), turn("c2", "m2")));
+            journal.append(List.of(turn("c1", "m3")));
+        }
+
+        try (MessageJournal journal = journal()) {
+            List<JournalEntry> replayed = journal.open();
+
+            assertThat(replayed).extracting(JournalEntry::seq).containsExactly(0L, 1L, 2L);
+            assertThat(replayed).extracting(JournalEntry::conversationId).containsExactly("c1", "c2", "c1");
+            MessageRecord message = replayed.get(0).messages().get(0);
+            assertThat(message.id()).isEqualTo("m1");
+            assertThat(message.content()).isEqualTo("Content of m1");
+            assertThat(message.metrics().getResponseTimeMs()).isEqualTo(1200);
+        }
+    }
+
+    @Test
+    void skipsATornTailAndKeepsAppending() throws Exception {
+        try (MessageJournal journal = journal()) {
+            journal.open();
+            journal.append(List.of(turn("c1", "m1")));
+        }
+        // The process died halfway through writing the next group
+        Path segment = segments().getLast();
+        Files.writeString(segment, "{\"seq\":1,\"journaledAt\":17000,\"conversationId\":\"c1\",\"mess",
+                StandardCharsets.UTF_8, StandardOpenOption.APPEND);
+
+        try (MessageJournal journal = journal()) {
+            assertThat(journal.open()).extracting(JournalEntry::seq).containsExactly(0L);
+            assertThat(journal.append(List.of(turn("c1", "m2")))).extracting(JournalEntry::seq).containsExactly(1L);
+        }
+
+        try (MessageJournal journal = journal()) {
+            assertThat(journal.open()).extracting(JournalEntry::seq).containsExactly(0L, 1L);
+        }
+    }
+
+    @Test
+    void skipsACorruptLineInTheMiddleOfASegment() throws Exception {
+        try (MessageJournal journal = journal()) {
+            journal.open();
+            journal.append(List.of(turn("c1", "m1")));
+        }
+        Path segment = segments().getLast();
+        Files.writeString(segment, "{\"seq\":1,\"conv\n", StandardCharsets.UTF_8, StandardOpenOption.APPEND);
+        Files.writeString(segment, objectMapper.writeValueAsString(new JournalEntry(2, 0, "c1", Instant.now(),
+                List.of(MessageRecord.of(message("m3"))))) + "\n", StandardCharsets.UTF_8, StandardOpenOption.APPEND);
+
+        try (MessageJournal journal = journal()) {
+            assertThat(journal.open()).extracting(JournalEntry::seq).containsExactly(0L, 2L);
+            assertThat(journal.append(List.of(turn("c1", "m4")))).extracting(JournalEntry::seq).containsExactly(3L);
+        }
+    }
+
+    @Test
+    void doesNotReplayDrainedEntries() throws Exception {
+        try (MessageJournal journal = journal()) {
+            journal.open();
+            journal.append(List.of(turn("c1", "m1"), turn("c1", "m2")));
+            journal.append(List.of(turn("c1", "m3")));
+            journal.release(1);
+        }
+
+        try (MessageJournal journal = journal()) {
+            assertThat(journal.open()).extracting(JournalEntry::seq).containsExactly(2L);
+            journal.release(2);
+            assertThat(journal.append(List.of(turn("c1", "m4")))).extracting(JournalEntry::seq).containsExactly(3L);
+            journal.release(3);
+        }
+
+        try (MessageJournal journal = journal()) {
+            assertThat(journal.open()).isEmpty();
+            // Sequence numbers keep growing past the checkpoint even with no segment left to read
+            assertThat(journal.append(List.of(turn("c1", "m5")))).extracting(JournalEntry::seq).containsExactly(4L);
+        }
+    }
+
+    @Test
+    void deletesSegmentsOnceTheyAreDrained() throws Exception {
+        try (MessageJournal journal = new MessageJournal(directory, 1, objectMapper)) {
+            journal.open();
+            journal.append(List.of(turn("c1", "m1")));
+            journal.append(List.of(turn("c1", "m2")));
+            assertThat(segments()).hasSize(3); // every append fills a segment of 1 byte
+
+            journal.release(0);
+            assertThat(segments()).hasSize(2);
+            journal.release(1);
+            assertThat(segments()).hasSize(1);
+        }
+    }
+
+    @Test
+    void keepsDeadLetters() throws Exception {
+        try (MessageJournal journal = journal()) {
+            journal.open();
+            JournalEntry entry = journal.append(List.of(turn("c1", "m1"))).get(0);
+
+            journal.deadLetter(entry);
+        }
+
+        List<String> lines = Files.readAllLines(directory.resolve("dead-letter.log"));
+        assertThat(lines).hasSize(1);
+        assertThat(objectMapper.readValue(lines.get(0), JournalEntry.class).conversationId()).isEqualTo("c1");
+    }
+
+    private MessageJournal journal() {
+        return new MessageJournal(directory, 1 << 20, objectMapper);
+    }
+
+    private List<Path> segments() throws Exception {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.filter(f -> f.getFileName().toString().startsWith("journal-"))
+                    .sorted()
+                    .toList();
+        }
+    }
+
+    private static MessageJournal.Turn turn(String conversationId, String messageId) {
+        return new MessageJournal.Turn(conversationId, Instant.now(), List.of(message(messageId)));
+    }
+
+    private static ChatMessage message(String id) {
+        ChatMessage message = new ChatMessage();
+        message.setId(id);
+        message.setContent("Content of " + id);
+        message.setUser(false);
+        message.setAiModel("gpt-4o");
+        message.setTimestamp(Instant.now());
+        message.setMetrics(new ResponseMetrics(1200, 3));
+        return message;
+    }
+}
@@ -0,0 +1,116 @@
+package com.ainexus.backend.repository;
+
+import com.ainexus.backend.model.ChatMessage;
+import com.ainexus.backend.model.Conversation;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.function.LongSupplier;
+
+/**
+ * Per-turn write cost of saving the whole conversation graph versus appending the two new
+ * messages, at 10, 100 and 1000 existing messages. Runs against the configured database and is
+ * not picked up by the default test run:
+ * <pre>mvn test -Dtest=MessagePersistenceBenchmark -Dsurefire.failIfNoSpecifiedTests=false</pre>
+ */
+@SpringBootTest
+class MessagePersistenceBenchmark {
+
+    private static final int[] SIZES = {10, 100, 1000};
+    private static final int WARMUP = 5;
+    private static final int TURNS = 20;
+
+    @Autowired
+    private ConversationRepository conversationRepository;
+
+    @Autowired
+    private ChatMessageRepository chatMessageRepository;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @Test
+    void compareWritePaths() {
+        System.out.printf("%10s %18s %18s%n", "messages", "save graph (ms)", "append (ms)");
+        for (int size : SIZES) {
+            String merged = seed(size);
+            String appended = seed(size);
+            try {
+                double save = measure(() -> saveGraph(merged));
+                double append = measure(() -> append(appended));
+                System.out.printf("%10d %18.2f %18.2f%n", size, save, append);
+            } finally {
+                conversationRepository.deleteById(merged);
+                conversationRepository.deleteById(appended);
+            }
+        }
+    }
+
+    // The previous write path: the loaded (detached) conversation is saved, merging every message
+    private long saveGraph(String conversationId) {
+        Conversation conversation = transactionTemplate.execute(status -> {
+            Conversation c = conversationRepository.findById(conversationId).orElseThrow();
+            c.getMessages().size();
+            return c;
+        });
+        long start = System.nanoTime();
+        conversation.getMessages().addAll(turn(conversation));
+        conversation.setUpdatedAt(Instant.now());
+        conversationRepository.save(conversation);
+        return System.nanoTime() - start;
+    }
+
+    private long append(String conversationId) {
+        Conversation conversation = conversationRepository.findById(conversationId).orElseThrow();
+        long start = System.nanoTime();
+        chatMessageRepository.appendToConversation(conversationId, turn(conversation), Instant.now());
+        return System.nanoTime() - start;
+    }
+
+    // Each turn returns the nanoseconds spent writing, excluding the untimed load before it
+    private double measure(LongSupplier turn) {
+        for (int i = 0; i < WARMUP; i++) {
+            turn.getAsLong();
+        }
+        long total = 0;
+        for (int i = 0; i < TURNS; i++) {
+            total += turn.getAsLong();
+        }
+        return total / (TURNS * 1_000_000.0);
+    }
+
+    private String seed(int size) {
+        Conversation conversation = new Conversation();
+        conversation.setId(UUID.randomUUID().toString());
+        conversation.setAiModel("gemini");
+        conversation.setCreatedAt(Instant.now());
+        conversation.setUpdatedAt(conversation.getCreatedAt());
+        List<ChatMessage> messages = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            messages.add(message(conversation, i % 2 == 0));
+        }
+        conversation.setMessages(messages);
+        return conversationRepository.save(conversation).getId();
+    }
+
+    private static List<ChatMessage> turn(Conversation conversation) {
+        return List.of(message(conversation, true), message(conversation, false));
+    }
+
+    private static ChatMessage message(Conversation conversation, boolean isUser) {
+        ChatMessage message = new ChatMessage();
+        message.setId(UUID.randomUUID().toString());
+        message.setContent("Benchmark message with a few dozen characters of content.");
+        message.setUser(isUser);
+        message.setAiModel(isUser ? null : "gemini");
+        message.setTimestamp(Instant.now());
+        message.setConversation(conversation);
+        return message;
+    }
+}
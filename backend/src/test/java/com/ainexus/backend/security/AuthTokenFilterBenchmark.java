@@ -0,0 +1,100 @@
+package com.ainexus.backend.security;
+
+import io.jsonwebtoken.Jwts;
+import io.jsonwebtoken.security.Keys;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import jakarta.servlet.Filter;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockFilterChain;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import javax.crypto.SecretKey;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Per-request cost of {@link AuthTokenFilter} with the previous token handling (signing key
+ * rebuilt and the token parsed and verified twice), with a single verification pass, and with
+ * the verified-token cache warm. No Spring context or database is involved. Not picked up by the
+ * default test run:
+ * <pre>mvn test -Dtest=AuthTokenFilterBenchmark -Dsurefire.failIfNoSpecifiedTests=false</pre>
+ */
+class AuthTokenFilterBenchmark {
+
+    private static final String SECRET = "very_secret_default_key_at_least_32_characters_long";
+    private static final int WARMUP = 20_000;
+    private static final int REQUESTS = 100_000;
+
+    @Test
+    void compareFilterOverhead() throws Exception {
+        JwtUtils cached = jwtUtils(10_000);
+        String token = cached.generateToken("benchmark@example.com");
+
+        System.out.printf("%-28s %12s%n", "filter", "ns/request");
+        System.out.printf("%-28s %12.0f%n", "two passes (previous)", measure(new PreviousAuthTokenFilter(), token));
+        System.out.printf("%-28s %12.0f%n", "single pass, no cache", measure(new AuthTokenFilter(jwtUtils(0)), token));
+        System.out.printf("%-28s %12.0f%n", "single pass, cached", measure(new AuthTokenFilter(cached), token));
+    }
+
+    private static JwtUtils jwtUtils(int cacheSize) {
+        return new JwtUtils(SECRET, List.of(), 86_400_000, cacheSize, new SimpleMeterRegistry());
+    }
+
+    private static double measure(Filter filter, String token) throws Exception {
+        for (int i = 0; i < WARMUP; i++) {
+            request(filter, token);
+        }
+        long start = System.nanoTime();
+        for (int i = 0; i < REQUESTS; i++) {
+            request(filter, token);
+        }
+        return (System.nanoTime() - start) / (double) REQUESTS;
+    }
+
+    private static void request(Filter filter, String token) throws Exception {
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/api/conversations");
+        request.addHeader("Authorization", "Bearer " + token);
+        filter.doFilter(request, new MockHttpServletResponse(), new MockFilterChain());
+        if (SecurityContextHolder.getContext().getAuthentication() == null) {
+            throw new IllegalStateException("Token was not accepted");
+        }
+        SecurityContextHolder.clearContext();
+    }
+
+    // The filter as it was: validateToken then getEmailFromToken, each building the key and parser
+    private static final class PreviousAuthTokenFilter extends OncePerRequestFilter {
+
+        @Override
+        protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain)
+                throws jakarta.servlet.ServletException, java.io.IOException {
+            String jwt = request.getHeader("Authorization").substring(7);
+            if (validateToken(jwt)) {
+                String email = Jwts.parser().verifyWith(key()).build().parseSignedClaims(jwt).getPayload().getSubject();
+                SecurityContextHolder.getContext().setAuthentication(
+                        new UsernamePasswordAuthenticationToken(email, null, new ArrayList<>()));
+            }
+            filterChain.doFilter(request, response);
+        }
+
+        private static boolean validateToken(String token) {
+            try {
+                Jwts.parser().verifyWith(key()).build().parseSignedClaims(token);
+                return true;
+            } catch (Exception e) {
+                return false;
+            }
+        }
+
+        private static SecretKey key() {
+            return Keys.hmacShaKeyFor(SECRET.getBytes(StandardCharsets.UTF_8));
+        }
+    }
+}
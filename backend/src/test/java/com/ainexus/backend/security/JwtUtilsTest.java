@@ -0,0 +1,132 @@
+package com.ainexus.backend.security;
+
+import io.jsonwebtoken.Jwts;
+import io.jsonwebtoken.security.Keys;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Date;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class JwtUtilsTest {
+
+    private static final String OLD_SECRET = "old_secret_that_is_at_least_32_characters_long";
+    private static final String NEW_SECRET = "new_secret_that_is_at_least_32_characters_long";
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    @Test
+    void verifiesItsOwnTokens() {
+        JwtUtils jwtUtils = jwtUtils(NEW_SECRET, List.of(), 60_000, 100);
+
+        assertThat(jwtUtils.verify(jwtUtils.generateToken("ada@example.com")))
+                .hasValueSatisfying(claims -> assertThat(claims.getSubject()).isEqualTo("ada@example.com"));
+    }
+
+    @Test
+    void acceptsTokensOfAPreviousSecretAfterRotation() {
+        String issuedBefore = jwtUtils(OLD_SECRET, List.of(), 60_000, 100).generateToken("ada@example.com");
+
+        JwtUtils rotated = jwtUtils(NEW_SECRET, List.of(OLD_SECRET, " "), 60_000, 100);
+        JwtUtils retired = jwtUtils(NEW_SECRET, List.of(), 60_000, 100);
+
+        assertThat(rotated.verify(issuedBefore)).isPresent();
+        assertThat(rotated.verify(rotated.generateToken("bob@example.com"))).isPresent();
+        assertThat(retired.verify(issuedBefore)).isEmpty();
+    }
+
+    @Test
+    void acceptsTokensWithoutKeyIdSignedWithTheCurrentSecret() {
+        JwtUtils jwtUtils = jwtUtils(NEW_SECRET, List.of(OLD_SECRET), 60_000, 100);
+
+        assertThat(jwtUtils.verify(legacyToken(NEW_SECRET))).isPresent();
+        assertThat(jwtUtils.verify(legacyToken(OLD_SECRET))).isEmpty();
+    }
+
+    @Test
+    void rejectsTamperedAndMalformedTokens() {
+        JwtUtils jwtUtils = jwtUtils(NEW_SECRET, List.of(), 60_000, 100);
+        String token = jwtUtils.generateToken("ada@example.com");
+        String tampered = token.substring(0, token.length() - 2) + (token.endsWith("A") ? "BB" : "AA");
+
+        assertThat(jwtUtils.verify(tampered)).isEmpty();
+        assertThat(jwtUtils.verify("not.a.token")).isEmpty();
+        assertThat(jwtUtils.verify("")).isEmpty();
+    }
+
+    @Test
+    void servesRepeatVerificationsFromTheCache() {
+        JwtUtils jwtUtils = jwtUtils(NEW_SECRET, List.of(), 60_000, 100);
+        String token = jwtUtils.generateToken("ada@example.com");
+
+        jwtUtils.verify(token);
+        jwtUtils.verify(token);
+        jwtUtils.verify(token);
+
+        assertThat(meterRegistry.counter("auth.token.cache.misses").count()).isEqualTo(1);
+        assertThat(meterRegistry.counter("auth.token.cache.hits").count()).isEqualTo(2);
+    }
+
+    @Test
+    void doesNotServeExpiredTokensFromTheCache() throws Exception {
+        JwtUtils jwtUtils = jwtUtils(NEW_SECRET, List.of(), 60_000, 100);
+        // Expiry is truncated to whole seconds, so this leaves between 0.5 and 1.5 seconds
+        String token = tokenExpiringIn(NEW_SECRET, 1_500);
+
+        assertThat(jwtUtils.verify(token)).isPresent();
+        Thread.sleep(2_100);
+
+        assertThat(jwtUtils.verify(token)).isEmpty();
+        assertThat(meterRegistry.counter("auth.token.cache.hits").count()).isZero();
+    }
+
+    @Test
+    void evictsTheLeastRecentlyUsedToken() {
+        JwtUtils jwtUtils = jwtUtils(NEW_SECRET, List.of(), 60_000, 2);
+        String first = jwtUtils.generateToken("a@example.com");
+        String second = jwtUtils.generateToken("b@example.com");
+        String third = jwtUtils.generateToken("c@example.com");
+
+        jwtUtils.verify(first);
+        jwtUtils.verify(second);
+        jwtUtils.verify(first); // hit, so second is now the eldest
+        jwtUtils.verify(third); // evicts second
+        jwtUtils.verify(first); // hit
+        jwtUtils.verify(second); // miss
+
+        assertThat(meterRegistry.counter("auth.token.cache.hits").count()).isEqualTo(2);
+        assertThat(meterRegistry.counter("auth.token.cache.misses").count()).isEqualTo(4);
+    }
+
+    @Test
+    void verifiesWithoutCacheWhenDisabled() {
+        JwtUtils jwtUtils = jwtUtils(NEW_SECRET, List.of(), 60_000, 0);
+        String token = jwtUtils.generateToken("ada@example.com");
+
+        assertThat(jwtUtils.verify(token)).isPresent();
+        assertThat(jwtUtils.verify(token)).isPresent();
+        assertThat(meterRegistry.counter("auth.token.cache.hits").count()).isZero();
+        assertThat(meterRegistry.counter("auth.token.cache.misses").count()).isZero();
+    }
+
+    private JwtUtils jwtUtils(String secret, List<String> previousSecrets, int expirationMs, int cacheSize) {
+        return new JwtUtils(secret, previousSecrets, expirationMs, cacheSize, meterRegistry);
+    }
+
+    // As issued before tokens named their key
+    private static String legacyToken(String secret) {
+        return tokenExpiringIn(secret, 60_000);
+    }
+
+    private static String tokenExpiringIn(String secret, long millis) {
+        return Jwts.builder()
+                .subject("ada@example.com")
+                .issuedAt(new Date())
+                .expiration(new Date(System.currentTimeMillis() + millis))
+                .signWith(Keys.hmacShaKeyFor(secret.getBytes(StandardCharsets.UTF_8)))
+                .compact();
+    }
+}
@@ -0,0 +1,53 @@
+package com.ainexus.backend.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.Base64;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/** The keyset cursors of {@link AiChatService#getMessages} and the conversation list. */
+class AiChatServiceCursorTest {
+
+    @Test
+    void roundTripsTimestampAndId() {
+        Instant timestamp = Instant.parse("2025-03-01T12:34:56.123456Z");
+
+        String cursor = AiChatService.encodeCursor(timestamp, "4f1c2a9e-0b7d-4c1e-9a51-3d2f8e6b7c10");
+
+        assertThat(AiChatService.decodeCursor(cursor))
+                .isEqualTo(new AiChatService.Cursor(timestamp, "4f1c2a9e-0b7d-4c1e-9a51-3d2f8e6b7c10"));
+    }
+
+    @Test
+    void isUrlSafe() {
+        String cursor = AiChatService.encodeCursor(Instant.EPOCH, "???>>>~~~");
+
+        assertThat(cursor).matches("[A-Za-z0-9_-]+");
+        assertThat(AiChatService.decodeCursor(cursor).id()).isEqualTo("???>>>~~~");
+    }
+
+    @Test
+    void keepsNewlinesInTheId() {
+        Instant timestamp = Instant.now();
+
+        assertThat(AiChatService.decodeCursor(AiChatService.encodeCursor(timestamp, "a\nb")).id()).isEqualTo("a\nb");
+    }
+
+    @Test
+    void rejectsMalformedCursors() {
+        assertThatThrownBy(() -> AiChatService.decodeCursor("not base64!"))
+                .isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> AiChatService.decodeCursor(encode("no separator")))
+                .isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> AiChatService.decodeCursor(encode("yesterday\nid")))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    private static String encode(String raw) {
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,118 @@
+package com.ainexus.backend.service;
+
+import com.ainexus.backend.config.PersistenceConfig;
+import com.ainexus.backend.model.User;
+import com.ainexus.backend.repository.UserRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.Optional;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class CreditLedgerTest {
+
+    private static final String EMAIL = "ada@example.com";
+
+    private final UserRepository userRepository = mock(UserRepository.class);
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final UserCache userCache = new UserCache(userRepository, new PersistenceConfig(), meterRegistry);
+    private final CreditLedger ledger = new CreditLedger(userRepository, userCache, meterRegistry);
+
+    @BeforeEach
+    void cacheUser() {
+        User user = new User();
+        user.setId(1L);
+        user.setEmail(EMAIL);
+        user.setCredits(10);
+        when(userRepository.findByEmail(EMAIL)).thenReturn(Optional.of(user));
+        userCache.get(EMAIL);
+    }
+
+    @Test
+    void reserveDebitsAndRecordsTheNewBalance() {
+        when(userRepository.debitCredits(EMAIL, 3)).thenReturn(Optional.of(7));
+
+        ledger.reserve(EMAIL, 3);
+
+        assertThat(userCache.require(EMAIL).credits()).isEqualTo(7);
+        assertThat(credits("reserve")).isEqualTo(3);
+    }
+
+    @Test
+    void reserveRejectsAnInsufficientBalance() {
+        when(userRepository.debitCredits(EMAIL, 30)).thenReturn(Optional.empty());
+
+        assertThatThrownBy(() -> ledger.reserve(EMAIL, 30)).isInstanceOf(InsufficientCreditsException.class);
+        assertThat(meterRegistry.counter("chat.credits.rejected").count()).isEqualTo(1);
+        assertThat(userCache.require(EMAIL).credits()).isEqualTo(10);
+    }
+
+    @Test
+    void reservingNothingDoesNotTouchTheDatabase() {
+        CreditLedger.Reservation reservation = ledger.reserve(EMAIL, 0);
+        reservation.refund();
+        reservation.commit();
+
+        verify(userRepository, never()).debitCredits(anyString(), anyInt());
+        verify(userRepository, never()).addCredits(anyString(), anyInt());
+    }
+
+    @Test
+    void commitKeepsTheCreditsAndSettlesTheReservation() {
+        when(userRepository.debitCredits(EMAIL, 2)).thenReturn(Optional.of(8));
+        CreditLedger.Reservation reservation = ledger.reserve(EMAIL, 2);
+
+        reservation.commit();
+        reservation.refund();
+
+        verify(userRepository, never()).addCredits(anyString(), anyInt());
+        assertThat(credits("commit")).isEqualTo(2);
+    }
+
+    @Test
+    void refundGivesBackOnlyWhatIsStillReserved() {
+        when(userRepository.debitCredits(EMAIL, 3)).thenReturn(Optional.of(7));
+        when(userRepository.addCredits(EMAIL, 1)).thenReturn(Optional.of(8));
+        when(userRepository.addCredits(EMAIL, 2)).thenReturn(Optional.of(10));
+        CreditLedger.Reservation reservation = ledger.reserve(EMAIL, 3);
+
+        reservation.refund(1); // one model of a compare failed
+        assertThat(userCache.require(EMAIL).credits()).isEqualTo(8);
+        reservation.refund(5);
+        reservation.refund();
+        reservation.commit();
+
+        verify(userRepository, times(1)).addCredits(EMAIL, 1);
+        verify(userRepository, times(1)).addCredits(EMAIL, 2);
+        assertThat(credits("refund")).isEqualTo(3);
+        assertThat(credits("commit")).isZero();
+        assertThat(userCache.require(EMAIL).credits()).isEqualTo(10);
+    }
+
+    @Test
+    void failedRefundIsLoggedNotThrown() {
+        when(userRepository.debitCredits(EMAIL, 1)).thenReturn(Optional.of(9));
+        when(userRepository.addCredits(EMAIL, 1)).thenThrow(new IllegalStateException("database down"));
+        CreditLedger.Reservation reservation = ledger.reserve(EMAIL, 1);
+
+        reservation.refund();
+        reservation.refund();
+
+        verify(userRepository, times(1)).addCredits(EMAIL, 1);
+        assertThat(credits("refund")).isZero();
+    }
+
+    private double credits(String operation) {
+        return meterRegistry.find("chat.credits").tag("operation", operation).counter().count();
+    }
+}
@@ -0,0 +1,126 @@
+package com.ainexus.backend.upstream;
+
+import com.ainexus.backend.config.AIConfig;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class ConcurrencyLimiterTest {
+
+    private final AIConfig aiConfig = new AIConfig();
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    @Test
+    void shedsBeyondTheLimitWithoutAQueue() throws Exception {
+        ConcurrencyLimiter limiter = limiter(2, 0);
+
+        limiter.acquire("m", "key");
+        limiter.acquire("m", "key");
+
+        assertThatThrownBy(() -> limiter.acquire("m", "key")).isInstanceOf(LoadShedException.class);
+        assertThat(meterRegistry.counter("upstream.limiter.shed").count()).isEqualTo(1);
+    }
+
+    @Test
+    void partitionsByModelAndKey() throws Exception {
+        ConcurrencyLimiter limiter = limiter(1, 0);
+
+        limiter.acquire("m", "key");
+
+        limiter.acquire("m", "other-key");
+        limiter.acquire("other-model", "key");
+    }
+
+    @Test
+    void queuedCallerGetsTheReleasedSlot() throws Exception {
+        aiConfig.getLimiter().setMaxWait(Duration.ofSeconds(5));
+        ConcurrencyLimiter limiter = limiter(1, 1);
+        ConcurrencyLimiter.Permit held = limiter.acquire("m", "key");
+
+        CompletableFuture<ConcurrencyLimiter.Permit> waiter = CompletableFuture.supplyAsync(() -> {
+            try {
+                return limiter.acquire("m", "key");
+            } catch (InterruptedException e) {
+                throw new IllegalStateException(e);
+            }
+        });
+        Thread.sleep(50);
+        assertThat(waiter).isNotDone();
+
+        held.record(100, false);
+        held.close();
+
+        assertThat(waiter.get(5, TimeUnit.SECONDS)).isNotNull();
+    }
+
+    @Test
+    void timesOutInTheQueue() throws Exception {
+        aiConfig.getLimiter().setMaxWait(Duration.ofMillis(20));
+        ConcurrencyLimiter limiter = limiter(1, 1);
+        limiter.acquire("m", "key");
+
+        assertThatThrownBy(() -> limiter.acquire("m", "key")).isInstanceOf(LoadShedException.class);
+    }
+
+    @Test
+    void shrinksTheLimitOnDrops() throws Exception {
+        aiConfig.getLimiter().setBackoffRatio(0.5);
+        ConcurrencyLimiter limiter = limiter(4, 0);
+
+        ConcurrencyLimiter.Permit permit = limiter.acquire("m", "key");
+        permit.record(-1, true);
+        permit.close();
+        permit.close(); // releasing twice must not free a second slot
+
+        assertThat(permitsAvailable(limiter)).isEqualTo(2);
+    }
+
+    @Test
+    void closingWithoutAnOutcomeKeepsTheLimit() throws Exception {
+        ConcurrencyLimiter limiter = limiter(3, 0);
+
+        limiter.acquire("m", "key").close();
+
+        assertThat(permitsAvailable(limiter)).isEqualTo(3);
+    }
+
+    @Test
+    void hasNoLimitWhenDisabled() throws Exception {
+        aiConfig.getLimiter().setEnabled(false);
+        ConcurrencyLimiter limiter = limiter(1, 0);
+
+        for (int i = 0; i < 10; i++) {
+            limiter.acquire("m", "key");
+        }
+    }
+
+    private ConcurrencyLimiter limiter(int initialLimit, int maxQueue) {
+        AIConfig.Limiter settings = aiConfig.getLimiter();
+        settings.setInitialLimit(initialLimit);
+        settings.setMinLimit(1);
+        settings.setMaxQueue(maxQueue);
+        return new ConcurrencyLimiter(aiConfig, meterRegistry);
+    }
+
+    // Takes permits until the limiter sheds, then gives them back without an outcome
+    private static int permitsAvailable(ConcurrencyLimiter limiter) throws InterruptedException {
+        List<ConcurrencyLimiter.Permit> taken = new ArrayList<>();
+        try {
+            while (true) {
+                taken.add(limiter.acquire("m", "key"));
+            }
+        } catch (LoadShedException e) {
+            return taken.size();
+        } finally {
+            taken.forEach(ConcurrencyLimiter.Permit::close);
+        }
+    }
+}
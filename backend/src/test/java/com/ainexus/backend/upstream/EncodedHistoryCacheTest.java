@@ -0,0 +1,75 @@
+package com.ainexus.backend.upstream;
+
+import com.ainexus.backend.config.AIConfig;
+import com.ainexus.backend.model.ChatMessage;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class EncodedHistoryCacheTest {
+
+    private final UpstreamCodec codec = new UpstreamCodec();
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final EncodedHistoryCache cache = new EncodedHistoryCache(codec, new AIConfig(), meterRegistry);
+
+    @Test
+    void reusesEncodingsWhileTheWindowSlides() throws Exception {
+        List<ChatMessage> conversation = messages(20);
+
+        for (int end = 1; end <= conversation.size(); end++) {
+            List<ChatMessage> window = conversation.subList(Math.max(0, end - 6), end);
+            assertThat(cache.encode("c1", window)).isEqualTo(encodeDirectly(window));
+        }
+
+        assertThat(meterRegistry.counter("history.cache.misses").count()).isEqualTo(1);
+        assertThat(meterRegistry.counter("history.cache.hits").count()).isEqualTo(19);
+    }
+
+    @Test
+    void returnsTheCachedArrayForAnUnchangedWindow() throws Exception {
+        List<ChatMessage> window = messages(3);
+
+        byte[] first = cache.encode("c1", window);
+
+        assertThat(cache.encode("c1", window)).isSameAs(first);
+    }
+
+    @Test
+    void reencodesWhenTheWindowNoLongerMatches() throws Exception {
+        List<ChatMessage> window = messages(4);
+        cache.encode("c1", window);
+
+        // The second message was replaced, e.g. after the conversation was cleared and reused
+        List<ChatMessage> changed = new ArrayList<>(window);
+        changed.set(1, message("other", "Something else", false));
+
+        assertThat(cache.encode("c1", changed)).isEqualTo(encodeDirectly(changed));
+        assertThat(cache.encode("c1", messages(0))).isEmpty();
+    }
+
+    private byte[] encodeDirectly(List<ChatMessage> window) throws Exception {
+        return codec.encodeMessages(window.stream()
+                .map(m -> new ChatCompletionRequest.Message(m.isUser() ? "user" : "assistant", m.getContent()))
+                .toList());
+    }
+
+    private static List<ChatMessage> messages(int count) {
+        List<ChatMessage> messages = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            messages.add(message("m" + i, "Message \"" + i + "\"", i % 2 == 0));
+        }
+        return messages;
+    }
+
+    private static ChatMessage message(String id, String content, boolean isUser) {
+        ChatMessage message = new ChatMessage();
+        message.setId(id);
+        message.setContent(content);
+        message.setUser(isUser);
+        return message;
+    }
+}
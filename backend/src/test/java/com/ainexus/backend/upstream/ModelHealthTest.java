@@ -0,0 +1,141 @@
+package com.ainexus.backend.upstream;
+
+import com.ainexus.backend.config.AIConfig;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.Collections;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ModelHealthTest {
+
+    @Test
+    void opensAfterConsecutiveFailures() {
+        ModelHealth health = new ModelHealth(settings(3, Duration.ofMinutes(1)));
+
+        health.onFailure(-1, false);
+        health.onFailure(-1, false);
+        health.onSuccess(100, false); // resets the streak
+        health.onFailure(-1, false);
+        health.onFailure(-1, false);
+        assertThat(health.getState()).isEqualTo(ModelHealth.State.CLOSED);
+
+        health.onFailure(-1, false);
+        assertThat(health.getState()).isEqualTo(ModelHealth.State.OPEN);
+        assertThat(health.tryAcquire()).isFalse();
+        assertThat(health.retryAfterMs()).isPositive();
+    }
+
+    @Test
+    void letsOneProbeThroughOnceTheOpenDurationHasPassed() throws Exception {
+        ModelHealth health = new ModelHealth(settings(1, Duration.ofMillis(20)));
+        health.onFailure(-1, false);
+
+        Thread.sleep(30);
+
+        assertThat(health.tryAcquire()).isTrue();
+        assertThat(health.getState()).isEqualTo(ModelHealth.State.HALF_OPEN);
+        assertThat(health.tryAcquire()).isFalse();
+
+        health.onSuccess(50, false);
+        assertThat(health.getState()).isEqualTo(ModelHealth.State.CLOSED);
+        assertThat(health.tryAcquire()).isTrue();
+    }
+
+    @Test
+    void failedProbeReopensTheCircuit() throws Exception {
+        ModelHealth health = new ModelHealth(settings(1, Duration.ofMillis(20)));
+        health.onFailure(-1, false);
+        Thread.sleep(30);
+        assertThat(health.tryAcquire()).isTrue();
+
+        health.onFailure(-1, false);
+
+        assertThat(health.getState()).isEqualTo(ModelHealth.State.OPEN);
+        assertThat(health.tryAcquire()).isFalse();
+    }
+
+    @Test
+    void releasedProbeFreesTheSlot() throws Exception {
+        ModelHealth health = new ModelHealth(settings(1, Duration.ofMillis(20)));
+        health.onFailure(-1, false);
+        Thread.sleep(30);
+        assertThat(health.tryAcquire()).isTrue();
+
+        health.release();
+
+        assertThat(health.getState()).isEqualTo(ModelHealth.State.HALF_OPEN);
+        assertThat(health.tryAcquire()).isTrue();
+    }
+
+    @Test
+    void derivesTimeoutFromTheWindowOnceItHasEnoughSamples() {
+        AIConfig.Resilience settings = settings(5, Duration.ofMinutes(1));
+        settings.setMinSamples(10);
+        settings.setMinTimeout(Duration.ofMillis(500));
+        ModelHealth health = new ModelHealth(settings);
+        Duration ceiling = Duration.ofSeconds(60);
+
+        for (int i = 1; i <= 9; i++) {
+            health.onSuccess(i * 100L, false);
+        }
+        assertThat(health.percentile(0.5, false)).isEqualTo(-1);
+        assertThat(health.timeout(ceiling, false)).isEqualTo(ceiling);
+
+        health.onSuccess(1000, false);
+        assertThat(health.percentile(0.5, false)).isEqualTo(500);
+        assertThat(health.timeout(ceiling, false)).isEqualTo(Duration.ofMillis(2000)); // p99 x 2
+        assertThat(health.timeout(Duration.ofMillis(1500), false)).isEqualTo(Duration.ofMillis(1500));
+    }
+
+    @Test
+    void streamedSamplesDoNotShortenTheCompleteTimeout() {
+        AIConfig.Resilience settings = settings(5, Duration.ofMinutes(1));
+        settings.setMinSamples(10);
+        settings.setMinTimeout(Duration.ofMillis(500));
+        ModelHealth health = new ModelHealth(settings);
+        Duration ceiling = Duration.ofSeconds(60);
+
+        // Streams answer with headers at the first token, complete calls only once the reply is done
+        for (int i = 0; i < 100; i++) {
+            health.onSuccess(300, true);
+        }
+        for (int i = 0; i < 10; i++) {
+            health.onSuccess(20_000, false);
+        }
+
+        assertThat(health.timeout(ceiling, true)).isEqualTo(Duration.ofMillis(600));
+        assertThat(health.timeout(ceiling, false)).isEqualTo(Duration.ofMillis(40_000));
+        assertThat(health.percentile(0.95, false)).isEqualTo(20_000);
+        assertThat(health.decayedLatencyMs(false)).isBetween(19_999.0, 20_001.0);
+    }
+
+    @Test
+    void seedDoesNotOverrideLiveLatency() {
+        ModelHealth health = new ModelHealth(settings(5, Duration.ofMinutes(1)));
+        health.onSuccess(100, false);
+
+        health.seed(Collections.nCopies(50, 5000L), false);
+
+        assertThat(health.decayedLatencyMs(false)).isBetween(99.0, 101.0);
+    }
+
+    @Test
+    void seedCountsAsOneObservationWhenNothingWasSeen() {
+        ModelHealth health = new ModelHealth(settings(5, Duration.ofMinutes(1)));
+
+        health.seed(List.of(100L, 300L), false);
+        health.onSuccess(800, false);
+
+        assertThat(health.decayedLatencyMs(false)).isBetween(499.0, 501.0);
+    }
+
+    private static AIConfig.Resilience settings(int failureThreshold, Duration openDuration) {
+        AIConfig.Resilience settings = new AIConfig.Resilience();
+        settings.setFailureThreshold(failureThreshold);
+        settings.setOpenDuration(openDuration);
+        return settings;
+    }
+}
@@ -0,0 +1,100 @@
+package com.ainexus.backend.upstream;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class UpstreamCodecTest {
+
+    private final UpstreamCodec codec = new UpstreamCodec();
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    @Test
+    void encodesRequestWithSplicedHistory() throws Exception {
+        byte[] history = codec.encodeMessages(List.of(
+                new ChatCompletionRequest.Message("user", "Quote \" and\nnewline, ünïcode 🙂"),
+                new ChatCompletionRequest.Message("assistant", "Answer")));
+        ChatCompletionRequest request = new ChatCompletionRequest("openai/gpt-4o",
+                List.of(new ChatCompletionRequest.Message("system", "Be brief")), true, "json_object");
+
+        JsonNode body = objectMapper.readTree(codec.encodeBytes(request, history));
+
+        assertThat(body.get("model").asText()).isEqualTo("openai/gpt-4o");
+        assertThat(body.get("stream").asBoolean()).isTrue();
+        assertThat(body.at("/stream_options/include_usage").asBoolean()).isTrue();
+        assertThat(body.at("/response_format/type").asText()).isEqualTo("json_object");
+        JsonNode messages = body.get("messages");
+        assertThat(messages).hasSize(3);
+        assertThat(messages.get(0).get("role").asText()).isEqualTo("system");
+        assertThat(messages.get(1).get("content").asText()).isEqualTo("Quote \" and\nnewline, ünïcode 🙂");
+        assertThat(messages.get(2).get("role").asText()).isEqualTo("assistant");
+    }
+
+    @Test
+    void splicesHistoryWithoutLeadingMessages() throws Exception {
+        byte[] history = codec.encodeMessages(List.of(new ChatCompletionRequest.Message("user", "Hi")));
+        ChatCompletionRequest request = new ChatCompletionRequest("m", List.of(), false, null);
+
+        JsonNode body = objectMapper.readTree(codec.encodeBytes(request, history));
+
+        assertThat(body.has("stream")).isFalse();
+        assertThat(body.has("response_format")).isFalse();
+        assertThat(body.get("messages")).hasSize(1);
+        assertThat(body.at("/messages/0/content").asText()).isEqualTo("Hi");
+    }
+
+    @Test
+    void encodesNoHistoryAsEmptyArray() throws Exception {
+        ChatCompletionRequest request = new ChatCompletionRequest("m", List.of(), false, null);
+
+        assertThat(codec.encodeMessages(List.of())).isEmpty();
+        assertThat(objectMapper.readTree(codec.encodeBytes(request, null)).get("messages")).isEmpty();
+    }
+
+    @Test
+    void decodesCompletionWithUsage() throws Exception {
+        String body = """
+                {"id":"gen-1","choices":[{"index":0,"message":{"role":"assistant","content":"Hello \\"there\\""}},
+                {"index":1,"message":{"content":"ignored"}}],"usage":{"prompt_tokens":12,"completion_tokens":3}}
+                """;
+
+        UpstreamCodec.Completion completion = codec.decodeCompletion(input(body));
+
+        assertThat(completion.content()).isEqualTo("Hello \"there\"");
+        assertThat(completion.error()).isNull();
+        assertThat(completion.usage()).isEqualTo(new UpstreamCodec.Usage(12, 3));
+    }
+
+    @Test
+    void decodesErrorBody() throws Exception {
+        UpstreamCodec.Completion completion = codec.decodeCompletion(
+                input("{\"error\":{\"code\":429,\"message\":\"Rate limited\"}}"));
+
+        assertThat(completion.content()).isNull();
+        assertThat(completion.error()).isEqualTo("Rate limited");
+    }
+
+    @Test
+    void decodesStreamChunks() throws Exception {
+        UpstreamCodec.StreamChunk delta = codec.decodeChunk("{\"choices\":[{\"delta\":{\"content\":\"Hel\"}}]}");
+        UpstreamCodec.StreamChunk last = codec.decodeChunk(
+                "{\"choices\":[{\"delta\":{}}],\"usage\":{\"prompt_tokens\":5,\"completion_tokens\":42}}");
+        UpstreamCodec.StreamChunk error = codec.decodeChunk("{\"error\":{\"message\":\"Overloaded\"}}");
+
+        assertThat(delta.delta()).isEqualTo("Hel");
+        assertThat(delta.usage()).isNull();
+        assertThat(last.delta()).isNull();
+        assertThat(last.usage().completionTokens()).isEqualTo(42);
+        assertThat(error.error()).isEqualTo("Overloaded");
+    }
+
+    private static ByteArrayInputStream input(String body) {
+        return new ByteArrayInputStream(body.getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,97 @@
+package com.ainexus.backend.upstream;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.http.HttpResponse;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/** The race between a call and its hedge in {@link UpstreamResilience}. */
+class UpstreamResilienceTest {
+
+    @Test
+    void overloadedResponseDoesNotWinTheRace() {
+        CompletableFuture<HttpResponse<InputStream>> primary = new CompletableFuture<>();
+        CompletableFuture<HttpResponse<InputStream>> hedge = new CompletableFuture<>();
+        CompletableFuture<HttpResponse<InputStream>> winner = UpstreamResilience.firstSuccessful(primary, hedge);
+        TrackedBody overloadedBody = new TrackedBody();
+
+        primary.complete(response(503, overloadedBody));
+        assertThat(winner).isNotDone();
+
+        HttpResponse<InputStream> ok = response(200, new TrackedBody());
+        hedge.complete(ok);
+        assertThat(winner.join()).isSameAs(ok);
+        assertThat(overloadedBody.closed).isTrue();
+    }
+
+    @Test
+    void fallsBackToTheOverloadedResponseWhenTheOtherFails() {
+        CompletableFuture<HttpResponse<InputStream>> primary = new CompletableFuture<>();
+        CompletableFuture<HttpResponse<InputStream>> hedge = new CompletableFuture<>();
+        CompletableFuture<HttpResponse<InputStream>> winner = UpstreamResilience.firstSuccessful(primary, hedge);
+
+        HttpResponse<InputStream> throttled = response(429, new TrackedBody());
+        primary.complete(throttled);
+        hedge.completeExceptionally(new IOException("connection reset"));
+
+        assertThat(winner.join()).isSameAs(throttled);
+    }
+
+    @Test
+    void closesTheLosingBody() {
+        CompletableFuture<HttpResponse<InputStream>> primary = new CompletableFuture<>();
+        CompletableFuture<HttpResponse<InputStream>> hedge = new CompletableFuture<>();
+        CompletableFuture<HttpResponse<InputStream>> winner = UpstreamResilience.firstSuccessful(primary, hedge);
+        TrackedBody loserBody = new TrackedBody();
+
+        HttpResponse<InputStream> ok = response(200, new TrackedBody());
+        hedge.complete(ok);
+        primary.complete(response(200, loserBody));
+
+        assertThat(winner.join()).isSameAs(ok);
+        assertThat(loserBody.closed).isTrue();
+    }
+
+    @Test
+    void failsOnlyWhenBothFail() {
+        CompletableFuture<HttpResponse<InputStream>> primary = new CompletableFuture<>();
+        CompletableFuture<HttpResponse<InputStream>> hedge = new CompletableFuture<>();
+        CompletableFuture<HttpResponse<InputStream>> winner = UpstreamResilience.firstSuccessful(primary, hedge);
+
+        primary.completeExceptionally(new IOException("first"));
+        assertThat(winner).isNotDone();
+        hedge.completeExceptionally(new IOException("second"));
+
+        assertThatThrownBy(winner::join).isInstanceOf(CompletionException.class).hasRootCauseMessage("first");
+    }
+
+    @SuppressWarnings("unchecked")
+    private static HttpResponse<InputStream> response(int status, InputStream body) {
+        HttpResponse<InputStream> response = mock(HttpResponse.class);
+        when(response.statusCode()).thenReturn(status);
+        when(response.body()).thenReturn(body);
+        return response;
+    }
+
+    private static final class TrackedBody extends ByteArrayInputStream {
+        boolean closed;
+
+        TrackedBody() {
+            super(new byte[0]);
+        }
+
+        @Override
+        public void close() {
+            closed = true;
+        }
+    }
+}
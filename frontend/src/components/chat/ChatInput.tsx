@@ -25,7 +25,7 @@ export const ChatInput: React.FC = () => {
     setError
   } = useChatStore();
 
-  const { sendMessage } = useAPI();
+  const { compareModels } = useAPI();
 
   const calculateSimpleScore = (text: string) => {
     if (!text.trim()) return 0;
@@ -104,38 +104,38 @@ export const ChatInput: React.FC = () => {
         conversationId = createConversation(selectedModels[0]);
       }
 
-      const promises = selectedModels.map(async (modelId) => {
+      // One server-side fan-out instead of one /chat/send per model
+      selectedModels.forEach(modelId => {
         setLoading(modelId, true);
         setError(modelId, null);
+      });
 
-        try {
-          const response = await sendMessage({
-            conversationId,
-            aiModel: modelId,
-            message: userMessage,
-            isExpertAdvice: isExpertMode
-          });
+      try {
+        const result = await compareModels({
+          conversationId,
+          aiModels: selectedModels,
+          message: userMessage,
+          isExpertAdvice: isExpertMode
+        });
 
-          const aiMessage = {
+        result.responses.forEach(response => {
+          addMessage(conversationId, {
             id: generateId(),
             content: response.content,
-            aiModel: modelId,
+            aiModel: response.aiModel,
             conversationId,
             timestamp: new Date().toISOString(),
             isUser: false,
             metrics: response.metrics
-          };
-
-          addMessage(conversationId, aiMessage);
-        } catch (error) {
-          console.error(`Error sending message to ${modelId}:`, error);
-          setError(modelId, error instanceof Error ? error.message : 'Failed to send message');
-        } finally {
-          setLoading(modelId, false);
-        }
-      });
-
-      await Promise.all(promises);
+          });
+        });
+      } catch (error) {
+        console.error('Error comparing models:', error);
+        const errorMessage = error instanceof Error ? error.message : 'Failed to send message';
+        selectedModels.forEach(modelId => setError(modelId, errorMessage));
+      } finally {
+        selectedModels.forEach(modelId => setLoading(modelId, false));
+      }
     } catch (error) {
       console.error('Error sending messages:', error);
     } finally {
@@ -1,5 +1,5 @@
 import { useState, useCallback } from 'react';
-import { SendMessageRequest, SendMessageResponse, CreateConversationRequest, Conversation, PersonalAnalytics, GlobalLeaderboard, AuthCredentials, SignupData } from '../types';
+import { SendMessageRequest, SendMessageResponse, CompareRequest, CompareResponse, CreateConversationRequest, Conversation, ConversationSummaryPage, MessagePage, PersonalAnalytics, GlobalLeaderboard, AuthCredentials, SignupData } from '../types';
 import apiClient from '../api/client';
 
 export const useAPI = () => {
@@ -10,6 +10,11 @@ export const useAPI = () => {
     return response.data;
   }, []);
 
+  const compareModels = useCallback(async (request: CompareRequest): Promise<CompareResponse> => {
+    const response = await apiClient.post<CompareResponse>('/chat/compare', request);
+    return response.data;
+  }, []);
+
   const createConversation = useCallback(async (request: CreateConversationRequest): Promise<Conversation> => {
     const response = await apiClient.post<Conversation>('/conversations', request);
     return response.data;
@@ -20,18 +25,32 @@ export const useAPI = () => {
     return response.data;
   }, []);
 
-  const getUserConversations = useCallback(async (): Promise<Conversation[]> => {
-    const response = await apiClient.get<Conversation[]>('/conversations');
+  const getMessages = useCallback(async (conversationId: string, before?: string, limit?: number): Promise<MessagePage> => {
+    const response = await apiClient.get<MessagePage>(`/conversations/${conversationId}/messages`, {
+      params: { before, limit }
+    });
+    return response.data;
+  }, []);
+
+  const getUserConversations = useCallback(async (before?: string, limit?: number): Promise<ConversationSummaryPage> => {
+    const response = await apiClient.get<ConversationSummaryPage>('/conversations', {
+      params: { before, limit }
+    });
     return response.data;
   }, []);
 
-  const getPersonalAnalytics = useCallback(async (): Promise<PersonalAnalytics> => {
-    const response = await apiClient.get<PersonalAnalytics>('/analytics/personal');
+  // from and to are inclusive yyyy-MM-dd (UTC) days; omit them for all history
+  const getPersonalAnalytics = useCallback(async (from?: string, to?: string): Promise<PersonalAnalytics> => {
+    const response = await apiClient.get<PersonalAnalytics>('/analytics/personal', {
+      params: { from, to }
+    });
     return response.data;
   }, []);
 
-  const getGlobalLeaderboard = useCallback(async (): Promise<GlobalLeaderboard> => {
-    const response = await apiClient.get<GlobalLeaderboard>('/analytics/leaderboard');
+  const getGlobalLeaderboard = useCallback(async (from?: string, to?: string): Promise<GlobalLeaderboard> => {
+    const response = await apiClient.get<GlobalLeaderboard>('/analytics/leaderboard', {
+      params: { from, to }
+    });
     return response.data;
   }, []);
 
@@ -56,8 +75,10 @@ export const useAPI = () => {
 
   return {
     sendMessage,
+    compareModels,
     createConversation,
     getConversation,
+    getMessages,
     getUserConversations,
     getPersonalAnalytics,
     getGlobalLeaderboard,
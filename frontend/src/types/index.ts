@@ -12,6 +12,18 @@ export interface ResponseMetrics {
   responseTimeMs: number;
   wordCount: number;
   tokensPerSecond: number;
+  timeToFirstTokenMs?: number;
+  streamingTokensPerSecond?: number;
+  cached?: boolean;
+  coalesced?: boolean;
+  promptTokens?: number;
+  completionTokens?: number;
+  usageReported?: boolean;
+  queueMs?: number;
+  encodeMs?: number;
+  upstreamFirstByteMs?: number;
+  upstreamTotalMs?: number;
+  persistMs?: number;
 }
 
 export interface Message {
@@ -21,9 +33,29 @@ export interface Message {
   conversationId: string;
   timestamp: string;
   isUser?: boolean;
+  requestedModel?: string;
   metrics?: ResponseMetrics;
 }
 
+export interface MessagePage {
+  conversationId: string;
+  messages: Message[];
+  nextCursor: string | null;
+}
+
+export interface ConversationSummary {
+  id: string;
+  aiModel: string;
+  updatedAt: string;
+  messageCount: number;
+  lastMessagePreview: string | null;
+}
+
+export interface ConversationSummaryPage {
+  conversations: ConversationSummary[];
+  nextCursor: string | null;
+}
+
 export interface Conversation {
   id: string;
   aiModel: string;
@@ -58,6 +90,18 @@ export interface SendMessageResponse {
   metrics?: ResponseMetrics;
 }
 
+export interface CompareRequest {
+  conversationId: string;
+  aiModels: string[];
+  message: string;
+  isExpertAdvice?: boolean;
+}
+
+export interface CompareResponse {
+  conversationId: string;
+  responses: SendMessageResponse[];
+}
+
 export interface CreateConversationRequest {
   aiModel: string;
 }
@@ -69,6 +113,13 @@ export interface ModelStat {
   avgResponseTime: number;
   avgTokensPerSecond: number;
   totalTokens: number;
+  autoRoutedCount?: number;
+  avgQueueMs?: number;
+  avgEncodeMs?: number;
+  avgFirstByteMs?: number;
+  avgUpstreamMs?: number;
+  totalPromptTokens?: number;
+  totalCompletionTokens?: number;
 }
 
 export interface ActivityTrend {